@@ -4,6 +4,7 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 
 /**
  * Used to animate game objects such as sprites.
@@ -254,6 +255,26 @@ public class Animation {
         }
     }
     
+    BufferedImage[] getOriginalFrames() {
+        return original;
+    }
+    
+    void save(ByteBuffer buffer) {
+        buffer.putInt(counter).putInt(frame).putInt(speed).putInt(repeatNumber).putInt(repeatAmount);
+        buffer.put((byte) ((complete? 1 : 0) | (paused? 2 : 0)));
+    }
+    
+    void load(ByteBuffer buffer) {
+        counter = buffer.getInt();
+        frame = buffer.getInt();
+        speed = buffer.getInt();
+        repeatNumber = buffer.getInt();
+        repeatAmount = buffer.getInt();
+        int flags = buffer.get();
+        complete = (flags & 1) != 0;
+        paused = (flags & 2) != 0;
+    }
+    
     /**
      * Resets and restarts the animations.
      */
@@ -2,6 +2,8 @@ package gametools;
 
 import java.awt.Dimension;
 import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 import java.util.List;
 
 /**
@@ -57,7 +59,25 @@ public class Area {
          * Collision when only the edges of the two objects are in contact
          * vertically, no matter the horizontal position.
          */
-        EDGE_Y(EDGE, Modifier.Y);
+        EDGE_Y(EDGE, Modifier.Y),
+        /**
+         * Collision when the rotated rectangles of the two objects overlap, which is tested with
+         * the separating axis theorem only after the boxes around the objects overlap. Unlike
+         * touch, a rotated graphic does not collide with the empty corners of its box.
+         */
+        ORIENTED(null, Modifier.BOTH),
+        /**
+         * Collision when any solid pixels of the images of the two objects overlap, which is
+         * tested only after the boxes around the objects overlap. Pixels that are at least half
+         * opaque are solid and an object without an image is solid everywhere.<br>
+         * <b>Note</b>: Objects that are rotated use the oriented collision method instead.
+         */
+        PIXEL(null, Modifier.BOTH),
+        /**
+         * Collision when the circle or capsule colliders of the two objects overlap, where
+         * an object without a collider uses its box instead.
+         */
+        COLLIDER(null, Modifier.BOTH);
         
         private static enum Modifier {
             X, Y, BOTH;
@@ -416,6 +436,16 @@ public class Area {
      * @return True if the objects are in contact.
      */
     public boolean isWithin(Area obj, Collision method) {
+        Metrics.COLLISION_TESTS.increment();
+        if (method == Collision.COLLIDER) return Collider.overlaps(this, obj);
+        if (method == Collision.ORIENTED || method == Collision.PIXEL) {
+            if (x + width <= obj.x || x >= obj.x + obj.width || y + height <= obj.y || y >= obj.y + obj.height) {
+                Metrics.COLLISION_PRUNED.increment();
+                return false;
+            }
+            if (method == Collision.PIXEL && getOrientedAngle() == 0 && obj.getOrientedAngle() == 0) return isOverlappingPixels(obj);
+            return isOverlapping(obj);
+        }
         boolean horizontal, vertical;
         if (method.isType(Collision.INSIDE)) {
             horizontal = x >= obj.x && x <= obj.x + obj.width && x + width <= obj.x + obj.width;
@@ -478,6 +508,77 @@ public class Area {
         return sprites.isWithin(this);
     }
     
+    /**
+     * Returns the angle of the true rectangle of the object, which is rotated around its center.
+     */
+    double getOrientedAngle() {
+        return 0;
+    }
+    
+    /**
+     * Returns the width of the true rectangle of the object before it is rotated.
+     */
+    int getOrientedWidth() {
+        return width;
+    }
+    
+    /**
+     * Returns the height of the true rectangle of the object before it is rotated.
+     */
+    int getOrientedHeight() {
+        return height;
+    }
+    
+    /**
+     * Returns the round shape used for collider collision or null if the object uses its box.
+     */
+    Collider getCollider() {
+        return null;
+    }
+    
+    /**
+     * Returns the image whose pixels are used for pixel collision or null if the whole area is solid.
+     */
+    BufferedImage getMaskImage() {
+        return null;
+    }
+    
+    /**
+     * Tests the solid pixels of the two objects over the rows and columns where they intersect.
+     */
+    private boolean isOverlappingPixels(Area obj) {
+        BufferedImage image = getMaskImage(), other = obj.getMaskImage();
+        int left = (int) Math.round(x), top = (int) Math.round(y);
+        int otherLeft = (int) Math.round(obj.x), otherTop = (int) Math.round(obj.y);
+        if (image == null && other == null) return true;
+        if (image == null) return Mask.of(other).overlaps(left - otherLeft, top - otherTop, left - otherLeft + width, top - otherTop + height);
+        if (other == null) return Mask.of(image).overlaps(otherLeft - left, otherTop - top, otherLeft - left + obj.width, otherTop - top + obj.height);
+        return Mask.of(image).overlaps(Mask.of(other), otherLeft - left, otherTop - top);
+    }
+    
+    /**
+     * Tests the true rectangles of the two objects against the axes of both rectangles,
+     * where the rectangles overlap if there is no axis that separates them.
+     */
+    private boolean isOverlapping(Area obj) {
+        double angle = getOrientedAngle(), other = obj.getOrientedAngle();
+        if (angle == 0 && other == 0) return true;
+        double cos = Math.cos(angle), sin = Math.sin(angle), otherCos = Math.cos(other), otherSin = Math.sin(other);
+        double relativeCos = Math.abs(Math.cos(other - angle)), relativeSin = Math.abs(Math.sin(other - angle));
+        int orientedWidth = getOrientedWidth(), orientedHeight = getOrientedHeight();
+        int otherWidth = obj.getOrientedWidth(), otherHeight = obj.getOrientedHeight();
+        double halfWidth = orientedWidth / 2.0, halfHeight = orientedHeight / 2.0;
+        double otherHalfWidth = otherWidth / 2.0, otherHalfHeight = otherHeight / 2.0;
+        double offsetX = (orientedWidth % 2) / 2.0, offsetY = (orientedHeight % 2) / 2.0;
+        double otherOffsetX = (otherWidth % 2) / 2.0, otherOffsetY = (otherHeight % 2) / 2.0;
+        double dx = (obj.x + obj.width / 2 + otherOffsetX * otherCos - otherOffsetY * otherSin) - (x + width / 2 + offsetX * cos - offsetY * sin);
+        double dy = (obj.y + obj.height / 2 + otherOffsetX * otherSin + otherOffsetY * otherCos) - (y + height / 2 + offsetX * sin + offsetY * cos);
+        if (Math.abs(dx * cos + dy * sin) >= halfWidth + otherHalfWidth * relativeCos + otherHalfHeight * relativeSin) return false;
+        if (Math.abs(dy * cos - dx * sin) >= halfHeight + otherHalfWidth * relativeSin + otherHalfHeight * relativeCos) return false;
+        if (Math.abs(dx * otherCos + dy * otherSin) >= otherHalfWidth + halfWidth * relativeCos + halfHeight * relativeSin) return false;
+        return Math.abs(dy * otherCos - dx * otherSin) < otherHalfHeight + halfWidth * relativeSin + halfHeight * relativeCos;
+    }
+    
     void updateDrag() {
         if (draggable && Game.mouseEngaged(MouseEvent.BUTTON1) && Game.mouseWithin(this) && !Game.isDragging()) {
             Game.setDragging(true);
@@ -500,6 +601,12 @@ public class Area {
      */
     public void draw() {
         updateDrag();
-        Game.painter().fillRect((int) x, (int) y, width, height);
+        DirtyRegions dirty = Game.dirtyRegions();
+        if (dirty == null) Game.painter().fillRect((int) x, (int) y, width, height);
+        else {
+            AffineTransform at = Game.painter().getTransform();
+            at.translate((int) x, (int) y);
+            dirty.submit(this, null, Game.painter().getColor(), at, width, height);
+        }
     }
 }
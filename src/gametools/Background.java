@@ -0,0 +1,100 @@
+package gametools;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * The prepared background layer of the game. A solid color is drawn with a single fill and
+ * an image is converted once into the format of the screen and then tiled straight from that
+ * copy, optionally scrolling with the camera. Drawing onto an untransformed painter allocates
+ * nothing, and drawing onto a painter with a camera transform only copies that transform.
+ */
+final class Background {
+    private static final AffineTransform IDENTITY = new AffineTransform();
+    private final Color color;
+    private final BufferedImage tile;
+    private final double scroll;
+    private final boolean opaque;
+    private BufferedImage image;
+    
+    Background(Color color) {
+        this.color = color;
+        tile = null;
+        scroll = 0;
+        opaque = color.getAlpha() == 255;
+    }
+    
+    Background(BufferedImage source, double scroll, int type) {
+        color = null;
+        this.scroll = scroll;
+        opaque = source.getTransparency() == Transparency.OPAQUE;
+        if (source.getType() == type) tile = source;
+        else {
+            tile = new BufferedImage(source.getWidth(), source.getHeight(), type);
+            Graphics2D painter = tile.createGraphics();
+            painter.drawImage(source, 0, 0, null);
+            painter.dispose();
+        }
+    }
+    
+    /**
+     * Draws the background over the region of the screen, which is cleared first if the
+     * background is not opaque.
+     * @param painter The painter of the screen, which can have any transform.
+     * @param region The region of the screen to draw over.
+     */
+    void draw(Graphics2D painter, Rectangle region) {
+        AffineTransform camera = painter.getTransform();
+        painter.setTransform(IDENTITY);
+        draw(painter, region, camera);
+        painter.setTransform(camera);
+    }
+    
+    /**
+     * Draws the background over the region of a painter that is not transformed.
+     * @param painter The painter of the screen without a transform.
+     * @param region The region of the screen to draw over.
+     * @param camera The transform of the camera, which a scrolling image follows.
+     */
+    void draw(Graphics2D painter, Rectangle region, AffineTransform camera) {
+        if (!opaque) painter.clearRect(region.x, region.y, region.width, region.height);
+        if (color != null) {
+            Color previous = painter.getColor();
+            painter.setColor(color);
+            painter.fillRect(region.x, region.y, region.width, region.height);
+            painter.setColor(previous);
+        }
+        else {
+            int w = tile.getWidth(), h = tile.getHeight();
+            int startX = offset(-camera.getTranslateX() * scroll, w), startY = offset(-camera.getTranslateY() * scroll, h);
+            int left = region.x - Math.floorMod(region.x - startX, w), top = region.y - Math.floorMod(region.y - startY, h);
+            for (int x = left; x < region.x + region.width; x += w)
+                for (int y = top; y < region.y + region.height; y += h) painter.drawImage(tile, x, y, null);
+        }
+    }
+    
+    boolean scrolls() {
+        return tile != null && scroll != 0;
+    }
+    
+    /**
+     * Returns the background as a single image the size of the screen, built the first time it is needed.
+     */
+    BufferedImage toImage(int width, int height) {
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D painter = image.createGraphics();
+            draw(painter, new Rectangle(0, 0, width, height));
+            painter.dispose();
+        }
+        return image;
+    }
+    
+    private static int offset(double shift, int size) {
+        return (int) -Math.floorMod((long) Math.floor(shift), (long) size);
+    }
+}
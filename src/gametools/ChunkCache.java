@@ -0,0 +1,143 @@
+package gametools;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The prerendered blocks of a tile map, keyed by the index of the block and kept in the order
+ * they were last used. The blocks are stored in arrays linked from the least to the most
+ * recently used, and found through an open addressing table of block indices, so looking up
+ * a block allocates nothing.
+ */
+final class ChunkCache {
+    private int[] keys = new int[16], previous = new int[16], next = new int[16], table = new int[32];
+    private BufferedImage[] images = new BufferedImage[16];
+    private int size, used, eldest = -1, newest = -1, free = -1;
+    
+    ChunkCache() {
+        Arrays.fill(table, -1);
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the image of the block and marks it as the most recently used, or returns null
+     * if the block is not cached.
+     */
+    BufferedImage get(int key) {
+        int node = table[position(key)];
+        if (node < 0) return null;
+        if (node != newest) {
+            unlink(node);
+            link(node);
+        }
+        return images[node];
+    }
+    
+    /**
+     * Adds the image of a block that is not cached yet as the most recently used.
+     */
+    void put(int key, BufferedImage image) {
+        int node = free;
+        if (node >= 0) free = next[node];
+        else {
+            if (used == keys.length) grow();
+            node = used++;
+        }
+        keys[node] = key;
+        images[node] = image;
+        link(node);
+        table[position(key)] = node;
+        size++;
+    }
+    
+    /**
+     * Removes a block and returns its image, or returns null if the block is not cached.
+     */
+    BufferedImage remove(int key) {
+        int position = position(key), node = table[position];
+        if (node < 0) return null;
+        unhash(position);
+        return release(node);
+    }
+    
+    /**
+     * Removes the least recently used block and returns its image, or returns null if the cache is empty.
+     */
+    BufferedImage evict() {
+        if (eldest < 0) return null;
+        int node = eldest;
+        unhash(position(keys[node]));
+        return release(node);
+    }
+    
+    void clear() {
+        Arrays.fill(table, -1);
+        Arrays.fill(images, null);
+        size = 0;
+        used = 0;
+        eldest = -1;
+        newest = -1;
+        free = -1;
+    }
+    
+    /**
+     * Returns the position of the key in the table or the empty position where it belongs.
+     */
+    private int position(int key) {
+        int mask = table.length - 1, position = (key * 0x9E3779B9) & mask;
+        while (table[position] >= 0 && keys[table[position]] != key) position = (position + 1) & mask;
+        return position;
+    }
+    
+    /**
+     * Empties a position of the table and moves the keys after it that would no longer be found.
+     */
+    private void unhash(int position) {
+        int mask = table.length - 1;
+        table[position] = -1;
+        for (int i = (position + 1) & mask; table[i] >= 0; i = (i + 1) & mask) {
+            int node = table[i];
+            table[i] = -1;
+            table[position(keys[node])] = node;
+        }
+    }
+    
+    private BufferedImage release(int node) {
+        BufferedImage image = images[node];
+        unlink(node);
+        images[node] = null;
+        next[node] = free;
+        free = node;
+        size--;
+        return image;
+    }
+    
+    private void link(int node) {
+        previous[node] = newest;
+        next[node] = -1;
+        if (newest >= 0) next[newest] = node;
+        else eldest = node;
+        newest = node;
+    }
+    
+    private void unlink(int node) {
+        if (previous[node] >= 0) next[previous[node]] = next[node];
+        else eldest = next[node];
+        if (next[node] >= 0) previous[next[node]] = previous[node];
+        else newest = previous[node];
+    }
+    
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        next = Arrays.copyOf(next, capacity);
+        images = Arrays.copyOf(images, capacity);
+        table = new int[capacity * 2];
+        Arrays.fill(table, -1);
+        for (int node = eldest; node >= 0; node = next[node]) table[position(keys[node])] = node;
+    }
+}
@@ -0,0 +1,222 @@
+package gametools;
+
+/**
+ * A round collision shape that can be attached to a sprite instead of its box, which is either
+ * a circle or a capsule. A capsule is a line through the center of the sprite that points in
+ * the direction of its angle, where every point within the radius of the line is solid. Shapes
+ * are tested with squared distances, so testing them never needs a square root. A shape does
+ * not change once it is created, so the same one can be shared between many sprites.
+ */
+public final class Collider {
+    private static final double EPSILON = 1e-12;
+    private final double radius, length, offsetX, offsetY;
+    
+    private Collider(double radius, double length, double offsetX, double offsetY) {
+        this.radius = Math.max(radius, 0);
+        this.length = Math.max(length, 0);
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+    }
+    
+    /**
+     * Creates a circle in the center of the sprite.
+     * @param radius The radius of the circle in pixels.
+     * @return A new circle shape.
+     */
+    public static Collider circle(double radius) {
+        return new Collider(radius, 0, 0, 0);
+    }
+    
+    /**
+     * Creates a circle that is moved from the center of the sprite. The offset is turned
+     * along with the sprite when it is rotated.
+     * @param radius The radius of the circle in pixels.
+     * @param offsetX The horizontal distance of the circle from the center of the sprite.
+     * @param offsetY The vertical distance of the circle from the center of the sprite.
+     * @return A new circle shape.
+     */
+    public static Collider circle(double radius, double offsetX, double offsetY) {
+        return new Collider(radius, 0, offsetX, offsetY);
+    }
+    
+    /**
+     * Creates a capsule through the center of the sprite that points in the direction of its angle.
+     * @param length The length of the line between the centers of the two round ends.
+     * @param radius The radius of the capsule in pixels.
+     * @return A new capsule shape.
+     */
+    public static Collider capsule(double length, double radius) {
+        return new Collider(radius, length, 0, 0);
+    }
+    
+    /**
+     * Creates a capsule that is moved from the center of the sprite. The offset is turned
+     * along with the sprite when it is rotated.
+     * @param length The length of the line between the centers of the two round ends.
+     * @param radius The radius of the capsule in pixels.
+     * @param offsetX The horizontal distance of the capsule from the center of the sprite.
+     * @param offsetY The vertical distance of the capsule from the center of the sprite.
+     * @return A new capsule shape.
+     */
+    public static Collider capsule(double length, double radius, double offsetX, double offsetY) {
+        return new Collider(radius, length, offsetX, offsetY);
+    }
+    
+    /**
+     * Returns the radius of the shape.
+     * @return The radius in pixels.
+     */
+    public double getRadius() {
+        return radius;
+    }
+    
+    /**
+     * Returns the length of the line between the centers of the round ends, which is zero for a circle.
+     * @return The length of the line in pixels.
+     */
+    public double getLength() {
+        return length;
+    }
+    
+    /**
+     * Returns the horizontal distance of the shape from the center of the sprite before it is rotated.
+     * @return The horizontal offset in pixels.
+     */
+    public double getOffsetX() {
+        return offsetX;
+    }
+    
+    /**
+     * Returns the vertical distance of the shape from the center of the sprite before it is rotated.
+     * @return The vertical offset in pixels.
+     */
+    public double getOffsetY() {
+        return offsetY;
+    }
+    
+    /**
+     * Returns whether the shape is a circle rather than a capsule.
+     * @return True if the shape is a circle.
+     */
+    public boolean isCircle() {
+        return length == 0;
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getName() + "[radius=" + radius + ", length=" + length + ", offsetX=" + offsetX + ", offsetY=" + offsetY + "]";
+    }
+    
+    /**
+     * Checks if the shapes of the two objects overlap, where an object without a shape uses its box.
+     */
+    static boolean overlaps(Area first, Area second) {
+        Collider collider = first.getCollider();
+        if (collider == null) {
+            Area swap = first;
+            first = second;
+            second = swap;
+            collider = first.getCollider();
+        }
+        if (collider == null) {
+            return first.x + first.width > second.x && first.x < second.x + second.width
+                    && first.y + first.height > second.y && first.y < second.y + second.height;
+        }
+        double angle = first.getOrientedAngle(), cos = angle == 0? 1 : Math.cos(angle), sin = angle == 0? 0 : Math.sin(angle);
+        double centerX = first.x + first.width / 2 + collider.offsetX * cos - collider.offsetY * sin;
+        double centerY = first.y + first.height / 2 + collider.offsetX * sin + collider.offsetY * cos;
+        double halfX = collider.length / 2 * cos, halfY = collider.length / 2 * sin;
+        return overlaps(centerX - halfX, centerY - halfY, centerX + halfX, centerY + halfY, collider.radius, second);
+    }
+    
+    /**
+     * Checks if the capsule between the two points overlaps the shape of the object, where an
+     * object without a shape uses its box. A circle has the same start and end.
+     */
+    static boolean overlaps(double startX, double startY, double endX, double endY, double radius, Area obj) {
+        Collider other = obj.getCollider();
+        if (other == null) {
+            double left = obj.x, top = obj.y, right = obj.x + obj.width, bottom = obj.y + obj.height;
+            return rectangleDistanceSquared(startX, startY, endX, endY, left, top, right, bottom) < radius * radius;
+        }
+        double angle = obj.getOrientedAngle(), cos = angle == 0? 1 : Math.cos(angle), sin = angle == 0? 0 : Math.sin(angle);
+        double centerX = obj.x + obj.width / 2 + other.offsetX * cos - other.offsetY * sin;
+        double centerY = obj.y + obj.height / 2 + other.offsetX * sin + other.offsetY * cos;
+        double halfX = other.length / 2 * cos, halfY = other.length / 2 * sin, reach = radius + other.radius;
+        return distanceSquared(startX, startY, endX, endY, centerX - halfX, centerY - halfY, centerX + halfX, centerY + halfY) < reach * reach;
+    }
+    
+    /**
+     * Returns the squared distance between the closest points of two line segments.
+     */
+    static double distanceSquared(double startX, double startY, double endX, double endY,
+            double otherStartX, double otherStartY, double otherEndX, double otherEndY) {
+        double dx = endX - startX, dy = endY - startY, otherDx = otherEndX - otherStartX, otherDy = otherEndY - otherStartY;
+        double rx = startX - otherStartX, ry = startY - otherStartY;
+        double length = dx * dx + dy * dy, otherLength = otherDx * otherDx + otherDy * otherDy;
+        double f = otherDx * rx + otherDy * ry, s, t;
+        if (length <= EPSILON && otherLength <= EPSILON) return rx * rx + ry * ry;
+        if (length <= EPSILON) {
+            s = 0;
+            t = clamp(f / otherLength);
+        }
+        else {
+            double c = dx * rx + dy * ry;
+            if (otherLength <= EPSILON) {
+                t = 0;
+                s = clamp(-c / length);
+            }
+            else {
+                double b = dx * otherDx + dy * otherDy, denominator = length * otherLength - b * b;
+                s = denominator > EPSILON? clamp((b * f - c * otherLength) / denominator) : 0;
+                t = (b * s + f) / otherLength;
+                if (t < 0) {
+                    t = 0;
+                    s = clamp(-c / length);
+                }
+                else if (t > 1) {
+                    t = 1;
+                    s = clamp((b - c) / length);
+                }
+            }
+        }
+        double x = startX + dx * s - otherStartX - otherDx * t, y = startY + dy * s - otherStartY - otherDy * t;
+        return x * x + y * y;
+    }
+    
+    /**
+     * Returns the squared distance between a line segment and a rectangle, which is zero
+     * when the segment crosses the rectangle.
+     */
+    static double rectangleDistanceSquared(double startX, double startY, double endX, double endY,
+            double left, double top, double right, double bottom) {
+        if (crosses(startX, startY, endX, endY, left, top, right, bottom)) return 0;
+        double closest = Math.min(pointDistanceSquared(startX, startY, left, top, right, bottom),
+                pointDistanceSquared(endX, endY, left, top, right, bottom));
+        if (startX == endX && startY == endY) return closest;
+        closest = Math.min(closest, distanceSquared(startX, startY, endX, endY, left, top, left, top));
+        closest = Math.min(closest, distanceSquared(startX, startY, endX, endY, right, top, right, top));
+        closest = Math.min(closest, distanceSquared(startX, startY, endX, endY, left, bottom, left, bottom));
+        return Math.min(closest, distanceSquared(startX, startY, endX, endY, right, bottom, right, bottom));
+    }
+    
+    private static double pointDistanceSquared(double x, double y, double left, double top, double right, double bottom) {
+        double dx = x < left? left - x : x > right? x - right : 0, dy = y < top? top - y : y > bottom? y - bottom : 0;
+        return dx * dx + dy * dy;
+    }
+    
+    private static boolean crosses(double startX, double startY, double endX, double endY,
+            double left, double top, double right, double bottom) {
+        if (Math.max(startX, endX) < left || Math.min(startX, endX) > right
+                || Math.max(startY, endY) < top || Math.min(startY, endY) > bottom) return false;
+        double dx = endX - startX, dy = endY - startY;
+        double topLeft = dx * (top - startY) - dy * (left - startX), topRight = dx * (top - startY) - dy * (right - startX);
+        double bottomLeft = dx * (bottom - startY) - dy * (left - startX), bottomRight = dx * (bottom - startY) - dy * (right - startX);
+        return !(topLeft > 0 && topRight > 0 && bottomLeft > 0 && bottomRight > 0)
+                && !(topLeft < 0 && topRight < 0 && bottomLeft < 0 && bottomRight < 0);
+    }
+    
+    private static double clamp(double value) {
+        return value < 0? 0 : value > 1? 1 : value;
+    }
+}
@@ -0,0 +1,340 @@
+package gametools;
+
+import java.util.List;
+
+/**
+ * Steers every sprite of a group as one crowd, such as a horde of enemies chasing the player.
+ * Every agent is pushed apart from its neighbors (separation), turned to the heading of its
+ * neighbors (alignment), pulled toward the center of its neighbors (cohesion), drawn toward the
+ * target (seek) and pushed away from obstacles (avoid), with a weight for each behavior.
+ * Neighbors are found through a spatial grid, so every agent only tests the agents in the cells
+ * around it, and only the closest few are used for steering. All new velocities are worked out before
+ * any sprite moves, so the result does not depend on the order the agents are moved in.<br>
+ * <b>Note</b>: Agents move at their own speed, so call the update method once per frame
+ * before drawing the group instead of moving the sprites with their move methods.
+ */
+public class Crowd {
+    private static final double SPREAD = Math.PI * (3 - Math.sqrt(5));
+    private final Group agents;
+    private SpatialGrid grid, obstacleGrid;
+    private Group obstacles;
+    private Position target;
+    private Area targetArea;
+    private FlowField field;
+    private double neighborRadius = 32, separationRadius = 16, avoidRadius = 24, responsiveness = 0.2;
+    private double separation = 1.5, alignment = 0.3, cohesion = 0.3, seek = 1, avoid = 2;
+    private int maxNeighbors = 12;
+    private boolean rotating = true;
+    private double[] agentState = new double[0], velocities = new double[0], nearestDistances = new double[12];
+    private int[] nearest = new int[12];
+    
+    /**
+     * Creates a crowd that steers all sprites of the group, including sprites added later.
+     * @param agents The group of sprites to steer.
+     */
+    public Crowd(Group agents) {
+        this.agents = agents;
+        grid = new SpatialGrid(neighborRadius);
+    }
+    
+    /**
+     * Returns the group of sprites steered by the crowd.
+     * @return The group of agents.
+     */
+    public Group getAgents() {
+        return agents;
+    }
+    
+    /**
+     * Sets the distance within which other agents count as neighbors for alignment and cohesion.
+     * The default is 32.
+     * @param radius The neighbor radius in pixels.
+     */
+    public void setNeighborRadius(double radius) {
+        neighborRadius = Math.max(radius, 1);
+        grid = new SpatialGrid(neighborRadius);
+    }
+    
+    /**
+     * Sets the distance within which agents push each other apart. The default is 16.
+     * @param radius The separation radius in pixels, which should not be larger than the neighbor radius.
+     */
+    public void setSeparationRadius(double radius) {
+        separationRadius = Math.max(radius, 0);
+    }
+    
+    /**
+     * Sets the distance from an obstacle at which agents start to turn away from it. The default is 24.
+     * @param radius The avoid radius in pixels.
+     */
+    public void setAvoidRadius(double radius) {
+        avoidRadius = Math.max(radius, 0);
+        if (obstacles != null) obstacleGrid = new SpatialGrid(Math.max(avoidRadius * 2, 1));
+    }
+    
+    /**
+     * Sets the most neighbors each agent looks at, which keeps dense crowds fast. The default is 12.
+     * @param neighbors The most neighbors per agent.
+     */
+    public void setMaxNeighbors(int neighbors) {
+        maxNeighbors = Math.max(neighbors, 1);
+        nearest = new int[maxNeighbors];
+        nearestDistances = new double[maxNeighbors];
+    }
+    
+    /**
+     * Sets how quickly agents change their velocity to the steering direction, where one
+     * changes it at once and values near zero turn slowly. The default is 0.2.
+     * @param responsiveness The fraction of the change applied every update.
+     */
+    public void setResponsiveness(double responsiveness) {
+        this.responsiveness = Math.min(Math.max(responsiveness, 0), 1);
+    }
+    
+    /**
+     * Sets the weight of each steering behavior, where zero turns the behavior off.
+     * The defaults are 1.5, 0.3, 0.3, 1 and 2.
+     * @param separation The weight of moving away from close neighbors.
+     * @param alignment The weight of heading the same way as neighbors.
+     * @param cohesion The weight of moving toward the center of neighbors.
+     * @param seek The weight of moving toward the target.
+     * @param avoid The weight of moving away from obstacles.
+     */
+    public void setWeights(double separation, double alignment, double cohesion, double seek, double avoid) {
+        this.separation = separation;
+        this.alignment = alignment;
+        this.cohesion = cohesion;
+        this.seek = seek;
+        this.avoid = avoid;
+    }
+    
+    /**
+     * Sets whether the sprites are rotated to face the direction they move in. The default is true.
+     * @param rotating True to rotate the sprites.
+     */
+    public void setRotating(boolean rotating) {
+        this.rotating = rotating;
+    }
+    
+    /**
+     * Makes the agents seek a fixed point.
+     * @param target The point to move toward.
+     */
+    public void setTarget(Position target) {
+        this.target = new Position(target);
+        targetArea = null;
+        field = null;
+    }
+    
+    /**
+     * Makes the agents seek the center of an object, which is followed as it moves.
+     * @param target The object to move toward, such as the player.
+     */
+    public void setTarget(Area target) {
+        targetArea = target;
+        this.target = null;
+        field = null;
+    }
+    
+    /**
+     * Makes the agents seek the target of a flow field, which leads them around the blocked
+     * cells of its navigation grid. Agents that arrived at the target cell or cannot reach
+     * it stop seeking.
+     * @param field The flow field to follow.
+     */
+    public void setFlowField(FlowField field) {
+        this.field = field;
+        target = null;
+        targetArea = null;
+    }
+    
+    /**
+     * Stops the agents from seeking any target.
+     */
+    public void clearTarget() {
+        target = null;
+        targetArea = null;
+        field = null;
+    }
+    
+    /**
+     * Sets the sprites the agents steer around, such as walls.
+     * @param obstacles The obstacles to avoid or null to avoid nothing.
+     */
+    public void setObstacles(Group obstacles) {
+        this.obstacles = obstacles;
+        obstacleGrid = obstacles == null? null : new SpatialGrid(Math.max(avoidRadius * 2, 1));
+    }
+    
+    /**
+     * Steers and moves every agent of the crowd once.
+     */
+    public void update() {
+        List<Sprite> elements = agents.getAll();
+        grid.build(elements);
+        if (obstacles != null) obstacleGrid.build(obstacles.getAll());
+        int count = elements.size();
+        if (agentState.length < count * 4) agentState = new double[(count + count / 2) * 4];
+        if (velocities.length < count * 2) velocities = new double[(count + count / 2) * 2];
+        for (int i = 0; i < count; i++) {
+            Sprite agent = grid.get(i);
+            agentState[i * 4] = agent.x + agent.width / 2.0;
+            agentState[i * 4 + 1] = agent.y + agent.height / 2.0;
+            agentState[i * 4 + 2] = agent.velocityX;
+            agentState[i * 4 + 3] = agent.velocityY;
+        }
+        double seekX = 0, seekY = 0;
+        boolean seeking = seek != 0;
+        if (target != null) {
+            seekX = target.x;
+            seekY = target.y;
+        }
+        else if (targetArea != null) {
+            seekX = targetArea.x + targetArea.width / 2.0;
+            seekY = targetArea.y + targetArea.height / 2.0;
+        }
+        else if (field == null) seeking = false;
+        double separationSquared = separationRadius * separationRadius;
+        double avoidSquared = avoidRadius * avoidRadius;
+        for (int i = 0; i < count; i++) {
+            double x = agentState[i * 4], y = agentState[i * 4 + 1], speed = grid.get(i).getSpeed();
+            double separateX = 0, separateY = 0, alignX = 0, alignY = 0, centerX = 0, centerY = 0;
+            int neighbors = findNeighbors(i, x, y);
+            for (int n = 0; n < neighbors; n++) {
+                int other = nearest[n];
+                double dx = x - agentState[other * 4], dy = y - agentState[other * 4 + 1], distance = nearestDistances[n];
+                alignX += agentState[other * 4 + 2];
+                alignY += agentState[other * 4 + 3];
+                centerX -= dx;
+                centerY -= dy;
+                if (distance < separationSquared) {
+                    if (distance == 0) {
+                        separateX += Math.cos(i * SPREAD);
+                        separateY += Math.sin(i * SPREAD);
+                        continue;
+                    }
+                    distance = Math.sqrt(distance);
+                    double push = (1 - distance / separationRadius) / distance;
+                    separateX += dx * push;
+                    separateY += dy * push;
+                }
+            }
+            double steerX = 0, steerY = 0, length;
+            if ((length = separateX * separateX + separateY * separateY) > 0) {
+                length = separation / Math.max(1, Math.sqrt(length));
+                steerX += separateX * length;
+                steerY += separateY * length;
+            }
+            if (neighbors > 0) {
+                if ((length = alignX * alignX + alignY * alignY) > 0 && speed > 0) {
+                    length = alignment / Math.max(neighbors * speed, Math.sqrt(length));
+                    steerX += alignX * length;
+                    steerY += alignY * length;
+                }
+                length = cohesion / (neighbors * neighborRadius);
+                steerX += centerX * length;
+                steerY += centerY * length;
+            }
+            if (seeking) {
+                if (field != null) {
+                    double angle = field.getAngle(x, y);
+                    if (!Double.isNaN(angle)) {
+                        steerX += Math.cos(angle) * seek;
+                        steerY += Math.sin(angle) * seek;
+                    }
+                }
+                else if ((length = (seekX - x) * (seekX - x) + (seekY - y) * (seekY - y)) > 0) {
+                    length = Math.sqrt(length);
+                    length = seek * Math.min(1, length / Math.max(separationRadius, speed)) / length;
+                    steerX += (seekX - x) * length;
+                    steerY += (seekY - y) * length;
+                }
+            }
+            if (obstacles != null && avoid != 0) {
+                double awayX = 0, awayY = 0;
+                int blocking = obstacleGrid.collect(x - avoidRadius, y - avoidRadius, x + avoidRadius, y + avoidRadius);
+                for (int c = 0; c < blocking; c++) {
+                    Sprite obstacle = obstacleGrid.candidate(c);
+                    double dx = x - Math.min(Math.max(x, obstacle.x), obstacle.x + obstacle.width);
+                    double dy = y - Math.min(Math.max(y, obstacle.y), obstacle.y + obstacle.height);
+                    double distance = dx * dx + dy * dy;
+                    if (distance >= avoidSquared) continue;
+                    if (distance == 0) {
+                        dx = x - obstacle.x - obstacle.width / 2.0;
+                        dy = y - obstacle.y - obstacle.height / 2.0;
+                        length = Math.sqrt(dx * dx + dy * dy);
+                        if (length == 0) continue;
+                        awayX += dx / length;
+                        awayY += dy / length;
+                        continue;
+                    }
+                    distance = Math.sqrt(distance);
+                    double push = (1 - distance / avoidRadius) / distance;
+                    awayX += dx * push;
+                    awayY += dy * push;
+                }
+                if ((length = awayX * awayX + awayY * awayY) > 0) {
+                    length = avoid / Math.max(1, Math.sqrt(length));
+                    steerX += awayX * length;
+                    steerY += awayY * length;
+                }
+            }
+            double velocityX = agentState[i * 4 + 2], velocityY = agentState[i * 4 + 3];
+            velocityX += (steerX * speed - velocityX) * responsiveness;
+            velocityY += (steerY * speed - velocityY) * responsiveness;
+            if ((length = velocityX * velocityX + velocityY * velocityY) > speed * speed) {
+                length = speed / Math.sqrt(length);
+                velocityX *= length;
+                velocityY *= length;
+            }
+            velocities[i * 2] = velocityX;
+            velocities[i * 2 + 1] = velocityY;
+        }
+        for (int i = 0; i < count; i++) {
+            Sprite agent = grid.get(i);
+            double velocityX = velocities[i * 2], velocityY = velocities[i * 2 + 1];
+            agent.velocityX = velocityX;
+            agent.velocityY = velocityY;
+            agent.x += velocityX;
+            agent.y += velocityY;
+            agent.confine();
+            if (rotating && velocityX * velocityX + velocityY * velocityY > 0.01) {
+                double angle = Math.atan2(velocityY, velocityX), turn = Math.abs(Tools.fixAngle(angle) - agent.angle);
+                if (Math.min(turn, Math.PI * 2 - turn) > 0.05) agent.setAngle(angle);
+            }
+        }
+        agents.changed();
+    }
+    
+    /**
+     * Keeps the closest agents within the neighbor radius of the agent in the nearest buffer,
+     * sorted by distance.
+     * @return The amount of neighbors that were kept.
+     */
+    private int findNeighbors(int agent, double x, double y) {
+        double limit = neighborRadius * neighborRadius;
+        int neighbors = 0, found = grid.collect(x - neighborRadius, y - neighborRadius, x + neighborRadius, y + neighborRadius);
+        for (int c = 0; c < found; c++) {
+            int other = grid.candidateIndex(c);
+            if (other == agent) continue;
+            double dx = x - agentState[other * 4], dy = y - agentState[other * 4 + 1], distance = dx * dx + dy * dy;
+            if (distance >= limit || neighbors == maxNeighbors && !closer(distance, other, neighbors - 1)) continue;
+            int at = neighbors < maxNeighbors? neighbors++ : neighbors - 1;
+            for (; at > 0 && closer(distance, other, at - 1); at--) {
+                nearest[at] = nearest[at - 1];
+                nearestDistances[at] = nearestDistances[at - 1];
+            }
+            nearest[at] = other;
+            nearestDistances[at] = distance;
+        }
+        return neighbors;
+    }
+    
+    /**
+     * Returns true if an agent at the squared distance is closer than the neighbor kept at
+     * the slot, where the agent that comes first in the group wins a tie.
+     */
+    private boolean closer(double distance, int agent, int slot) {
+        return distance < nearestDistances[slot] || distance == nearestDistances[slot] && agent < nearest[slot];
+    }
+}
@@ -0,0 +1,289 @@
+package gametools;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import javax.swing.JComponent;
+
+/**
+ * Collects everything drawn in a frame when the game uses dirty rectangle rendering.
+ * Each object is compared with what it drew in the previous frame, and only the regions
+ * of the screen where something appeared, moved, changed or disappeared are cleared,
+ * redrawn and presented. The objects of the current and previous frame are found through
+ * tables keyed by identity, so the objects themselves store nothing about being drawn.
+ */
+final class DirtyRegions {
+    private static final int MAX_REGIONS = 16;
+    private Object[] owners = new Object[64], prevOwners = new Object[64];
+    private BufferedImage[] images = new BufferedImage[64], prevImages = new BufferedImage[64];
+    private Color[] colors = new Color[64], prevColors = new Color[64];
+    private AffineTransform[] transforms = new AffineTransform[64], prevTransforms = new AffineTransform[64];
+    private Rectangle[] bounds = new Rectangle[64], prevBounds = new Rectangle[64];
+    private int[] table = new int[128], prevTable = new int[128];
+    private Runnable[] drawings = new Runnable[64];
+    private int[] widths = new int[64], heights = new int[64];
+    private final Rectangle[] regions = new Rectangle[MAX_REGIONS];
+    private final int width, height;
+    private int count, prevCount, regionCount, presented;
+    private boolean full = true;
+    private long tick;
+    private AffineTransform lastCamera;
+    
+    DirtyRegions(int width, int height) {
+        this.width = width;
+        this.height = height;
+        Arrays.fill(table, -1);
+        Arrays.fill(prevTable, -1);
+    }
+    
+    /**
+     * Starts collecting a new frame, keeping the objects of the last frame for comparison.
+     */
+    void begin(long tick) {
+        this.tick = tick;
+        int stale = prevCount;
+        Object[] owner = prevOwners;
+        prevOwners = owners;
+        owners = owner;
+        BufferedImage[] image = prevImages;
+        prevImages = images;
+        images = image;
+        Color[] color = prevColors;
+        prevColors = colors;
+        colors = color;
+        AffineTransform[] transform = prevTransforms;
+        prevTransforms = transforms;
+        transforms = transform;
+        Rectangle[] bound = prevBounds;
+        prevBounds = bounds;
+        bounds = bound;
+        int[] index = prevTable;
+        prevTable = table;
+        table = index;
+        Arrays.fill(owners, 0, stale, null);
+        Arrays.fill(images, 0, stale, null);
+        Arrays.fill(colors, 0, stale, null);
+        Arrays.fill(transforms, 0, stale, null);
+        if (table.length < prevTable.length) table = new int[prevTable.length];
+        Arrays.fill(table, -1);
+        prevCount = count;
+        count = 0;
+        regionCount = 0;
+    }
+    
+    /**
+     * Adds an object to the frame and marks it dirty if it looks different from the last frame.
+     * @param owner The object being drawn.
+     * @param image The image to draw or null to fill a rectangle with the color.
+     * @param color The color to fill with if there is no image.
+     * @param transform The transform from the image to the screen.
+     * @param w The width of the image or rectangle.
+     * @param h The height of the image or rectangle.
+     */
+    void submit(Area owner, BufferedImage image, Color color, AffineTransform transform, int w, int h) {
+        if (count == owners.length) grow();
+        Rectangle box = bounds(transform, w, h);
+        int last = find(table, owners, owner), before = find(prevTable, prevOwners, owner);
+        boolean changed = last >= 0 || before < 0 || prevImages[before] != image || !transform.equals(prevTransforms[before])
+                || (image == null && !color.equals(prevColors[before]));
+        if (changed) {
+            if (last >= 0) mark(bounds[last]);
+            else if (before >= 0) mark(prevBounds[before]);
+            mark(box);
+        }
+        add(owner, image, color, null, transform, w, h);
+    }
+    
+    /**
+     * Adds custom drawing code to the frame that is run with the passed in transform while
+     * redrawing. Since its bounds are not known the whole screen is redrawn.
+     * @param drawing The code that draws onto the painter.
+     * @param transform The transform of the painter when the code was submitted.
+     */
+    void submit(Runnable drawing, AffineTransform transform) {
+        if (count == owners.length) grow();
+        markAll();
+        if (bounds[count] == null) bounds[count] = new Rectangle();
+        bounds[count].setBounds(0, 0, width, height);
+        add(null, null, null, drawing, transform, 0, 0);
+    }
+    
+    /**
+     * Adds custom drawing code that covers a known region of the screen. The region is only
+     * marked dirty if the owner drew with another transform or region in the last frame or
+     * changed since then, otherwise the code only runs where other objects made the screen dirty.
+     * @param owner The object drawing, which identifies the drawing from frame to frame.
+     * @param drawing The code that draws onto the painter.
+     * @param transform The transform of the painter when the code was submitted.
+     * @param area The region of the screen the code draws in.
+     * @param changed True if the drawing looks different from the last frame.
+     */
+    void submit(Object owner, Runnable drawing, AffineTransform transform, Rectangle area, boolean changed) {
+        if (count == owners.length) grow();
+        if (bounds[count] == null) bounds[count] = new Rectangle();
+        Rectangle box = bounds[count];
+        box.setBounds(area);
+        int last = find(table, owners, owner), before = find(prevTable, prevOwners, owner);
+        if (changed || last >= 0 || before < 0 || !transform.equals(prevTransforms[before]) || !box.equals(prevBounds[before])) {
+            if (last >= 0) mark(bounds[last]);
+            else if (before >= 0) mark(prevBounds[before]);
+            mark(box);
+        }
+        add(owner, null, null, drawing, transform, 0, 0);
+    }
+    
+    /**
+     * Adds a record whose bounds were already set in the bounds of the current frame.
+     */
+    private void add(Object owner, BufferedImage image, Color color, Runnable drawing, AffineTransform transform, int w, int h) {
+        owners[count] = owner;
+        images[count] = image;
+        colors[count] = color;
+        drawings[count] = drawing;
+        transforms[count] = transform;
+        widths[count] = w;
+        heights[count] = h;
+        if (owner != null) {
+            if (count * 2 >= table.length) rehash();
+            int mask = table.length - 1, slot = (System.identityHashCode(owner) * 0x9E3779B9) & mask;
+            while (table[slot] >= 0 && owners[table[slot]] != owner) slot = (slot + 1) & mask;
+            table[slot] = count;
+        }
+        count++;
+    }
+    
+    /**
+     * Sets the reused bounds of the next record to the screen region covered by a transformed
+     * rectangle, with a pixel of margin for antialiased edges.
+     */
+    private Rectangle bounds(AffineTransform transform, int w, int h) {
+        Rectangle box = bounds[count];
+        if (box == null) box = bounds[count] = new Rectangle();
+        double x = transform.getTranslateX(), y = transform.getTranslateY();
+        double rightX = transform.getScaleX() * w, rightY = transform.getShearY() * w;
+        double downX = transform.getShearX() * h, downY = transform.getScaleY() * h;
+        double left = x + Math.min(0, rightX) + Math.min(0, downX), right = x + Math.max(0, rightX) + Math.max(0, downX);
+        double top = y + Math.min(0, rightY) + Math.min(0, downY), bottom = y + Math.max(0, rightY) + Math.max(0, downY);
+        int minX = (int) Math.floor(left), minY = (int) Math.floor(top);
+        box.setBounds(minX - 1, minY - 1, (int) Math.ceil(right) - minX + 2, (int) Math.ceil(bottom) - minY + 2);
+        return box;
+    }
+    
+    private void rehash() {
+        table = new int[table.length * 2];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        for (int i = 0; i < count; i++) {
+            if (owners[i] == null) continue;
+            int slot = (System.identityHashCode(owners[i]) * 0x9E3779B9) & mask;
+            while (table[slot] >= 0 && owners[table[slot]] != owners[i]) slot = (slot + 1) & mask;
+            table[slot] = i;
+        }
+    }
+    
+    /**
+     * Returns the index of the last record of the object in a frame, or -1 if it was not drawn.
+     */
+    private static int find(int[] table, Object[] owners, Object owner) {
+        int mask = table.length - 1, slot = (System.identityHashCode(owner) * 0x9E3779B9) & mask;
+        while (table[slot] >= 0) {
+            if (owners[table[slot]] == owner) return table[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    /**
+     * Marks a region of the screen to be redrawn in the current frame.
+     */
+    void mark(Rectangle region) {
+        if (full) return;
+        Rectangle merged = region.intersection(new Rectangle(0, 0, width, height));
+        if (merged.isEmpty()) return;
+        for (int i = 0; i < regionCount; i++) {
+            if (regions[i].intersects(merged)) {
+                merged = merged.union(regions[i]);
+                regions[i--] = regions[--regionCount];
+            }
+        }
+        if (regionCount == MAX_REGIONS || (long) merged.width * merged.height * 2 > (long) width * height) full = true;
+        else regions[regionCount++] = merged;
+    }
+    
+    /**
+     * Marks the whole screen to be redrawn in the current frame.
+     */
+    void markAll() {
+        full = true;
+    }
+    
+    /**
+     * Returns the amount of separate regions redrawn in the last frame.
+     */
+    int getRegionCount() {
+        return presented;
+    }
+    
+    /**
+     * Redraws the dirty regions of the frame onto the screen and presents them.
+     */
+    void finish(Graphics2D painter, Background background, JComponent view) {
+        AffineTransform camera = painter.getTransform();
+        if (background.scrolls() && !camera.equals(lastCamera)) full = true;
+        lastCamera = camera;
+        for (int i = 0; i < prevCount; i++) {
+            if (prevOwners[i] == null || find(table, owners, prevOwners[i]) < 0) mark(prevBounds[i]);
+        }
+        if (full) {
+            regions[0] = new Rectangle(0, 0, width, height);
+            regionCount = 1;
+        }
+        Color color = painter.getColor();
+        painter.setTransform(new AffineTransform());
+        for (int r = 0; r < regionCount; r++) {
+            Rectangle region = regions[r];
+            painter.setClip(region);
+            background.draw(painter, region, camera);
+            for (int i = 0; i < count; i++) {
+                if (!bounds[i].intersects(region)) continue;
+                if (images[i] != null) painter.drawImage(images[i], transforms[i], null);
+                else {
+                    painter.setTransform(transforms[i]);
+                    if (drawings[i] != null) drawings[i].run();
+                    else {
+                        painter.setColor(colors[i]);
+                        painter.fillRect(0, 0, widths[i], heights[i]);
+                    }
+                    painter.setTransform(new AffineTransform());
+                }
+            }
+            if (view != null) view.repaint(region);
+        }
+        painter.setClip(null);
+        painter.setTransform(camera);
+        painter.setColor(color);
+        presented = regionCount;
+        Arrays.fill(drawings, 0, count, null);
+        full = false;
+    }
+    
+    private void grow() {
+        int size = owners.length * 2;
+        owners = Arrays.copyOf(owners, size);
+        prevOwners = Arrays.copyOf(prevOwners, size);
+        images = Arrays.copyOf(images, size);
+        prevImages = Arrays.copyOf(prevImages, size);
+        colors = Arrays.copyOf(colors, size);
+        prevColors = Arrays.copyOf(prevColors, size);
+        drawings = Arrays.copyOf(drawings, size);
+        transforms = Arrays.copyOf(transforms, size);
+        prevTransforms = Arrays.copyOf(prevTransforms, size);
+        widths = Arrays.copyOf(widths, size);
+        heights = Arrays.copyOf(heights, size);
+        bounds = Arrays.copyOf(bounds, size);
+        prevBounds = Arrays.copyOf(prevBounds, size);
+    }
+}
@@ -0,0 +1,91 @@
+package gametools;
+
+/**
+ * Leads every cell of a navigation grid along the shortest path to a single target, so any
+ * amount of sprites chasing the same target only need to look up the direction of the cell
+ * they are in. Flow fields are built and cached by the navigation grid and never change.
+ */
+public final class FlowField {
+    static final byte NONE = -1, ARRIVED = 8;
+    private static final double[] ANGLES = new double[8];
+    private final double x, y, cellSize;
+    private final int columns, rows;
+    private final float[] distances;
+    private final byte[] directions;
+    
+    static {
+        for (int i = 0; i < 8; i++) ANGLES[i] = Math.PI / 4 * i;
+    }
+    
+    FlowField(double x, double y, int columns, int rows, double cellSize, float[] distances, byte[] directions) {
+        this.x = x;
+        this.y = y;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.distances = distances;
+        this.directions = directions;
+    }
+    
+    /**
+     * Returns the direction to move in from the point to follow the shortest path to the target.
+     * @param x The x of the point in the game.
+     * @param y The y of the point in the game.
+     * @return The angle in radians, or NaN if the point is in the target cell, blocked,
+     * outside the grid or cannot reach the target.
+     */
+    public double getAngle(double x, double y) {
+        int cell = cell(x, y);
+        if (cell < 0 || directions[cell] == NONE || directions[cell] == ARRIVED) return Double.NaN;
+        return ANGLES[directions[cell]];
+    }
+    
+    /**
+     * Returns the direction to move in from the position to follow the shortest path to the target.
+     * @param pos The position in the game.
+     * @return The angle in radians, or NaN if the position is in the target cell, blocked,
+     * outside the grid or cannot reach the target.
+     */
+    public double getAngle(Position pos) {
+        return getAngle(pos.x, pos.y);
+    }
+    
+    /**
+     * Returns the length of the shortest path from the point to the target.
+     * @param x The x of the point in the game.
+     * @param y The y of the point in the game.
+     * @return The distance in cells, or infinity if the target cannot be reached from the point.
+     */
+    public double getDistance(double x, double y) {
+        int cell = cell(x, y);
+        return cell < 0? Double.POSITIVE_INFINITY : distances[cell];
+    }
+    
+    /**
+     * Returns whether the target can be reached from the point.
+     * @param x The x of the point in the game.
+     * @param y The y of the point in the game.
+     * @return True if there is a path from the point to the target.
+     */
+    public boolean isReachable(double x, double y) {
+        int cell = cell(x, y);
+        return cell >= 0 && directions[cell] != NONE;
+    }
+    
+    /**
+     * Returns whether the point is in the same cell as the target.
+     * @param x The x of the point in the game.
+     * @param y The y of the point in the game.
+     * @return True if the point has arrived at the target cell.
+     */
+    public boolean hasArrived(double x, double y) {
+        int cell = cell(x, y);
+        return cell >= 0 && directions[cell] == ARRIVED;
+    }
+    
+    private int cell(double x, double y) {
+        int column = (int) Math.floor((x - this.x) / cellSize), row = (int) Math.floor((y - this.y) / cellSize);
+        if (column < 0 || row < 0 || column >= columns || row >= rows) return -1;
+        return row * columns + column;
+    }
+}
@@ -0,0 +1,32 @@
+package gametools;
+
+/**
+ * A task script that builds the flow field toward a target on a navigation grid in the
+ * background and hands it back on the game thread, so a large grid does not stall the game
+ * the first time a target is chased. The field is cached by the grid like fields requested
+ * directly. Override the finish method to use the field, for example by passing it to a crowd.
+ */
+public class FlowFieldTask extends TaskScript<FlowField> {
+    private final NavGrid grid;
+    private final double targetX, targetY;
+    
+    /**
+     * Creates a task that builds the flow field toward the target once it is started.
+     * @param grid The grid to search.
+     * @param target The point the field leads to.
+     */
+    public FlowFieldTask(NavGrid grid, Position target) {
+        this.grid = grid;
+        targetX = target.x;
+        targetY = target.y;
+    }
+    
+    /**
+     * Builds the flow field on the thread of the task.
+     * @return The flow field from the get flow field method of the grid.
+     */
+    @Override
+    protected FlowField execute() {
+        return grid.getFlowField(targetX, targetY);
+    }
+}
@@ -6,6 +6,7 @@ import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.KeyboardFocusManager;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
@@ -15,8 +16,8 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import javax.swing.ImageIcon;
 import javax.swing.JFrame;
@@ -27,13 +28,30 @@ import javax.swing.JPanel;
  * Manages game input, the game window and the output displayed.
  */
 public abstract class Game {
+    private static final int KEY_CODES = 1 << 16, MOUSE_BUTTONS = 64;
     private static int fps = 60, width = 800, height = 800, mouseX, mouseY;
+    private static volatile int rawMouseX, rawMouseY;
     private static boolean dragging;
     private static Graphics2D graphics;
-    private static volatile HashSet<Integer> keys = new HashSet<>(), mouse = new HashSet<>(),
-            prevKeys = new HashSet<>(), prevMouse = new HashSet<>();
-    private static final JFrame frame = new JFrame();
-    private static BufferedImage screen, background = Tools.UNDEFINED_IMAGE;
+    private static final InputQueue input = new InputQueue(1024);
+    private static final long[] keys = new long[KEY_CODES / 64], prevKeys = new long[KEY_CODES / 64],
+            lateKeys = new long[KEY_CODES / 64];
+    private static long mouse, prevMouse, lateMouse, frameTime;
+    private static boolean late;
+    private static final InputHistory history = new InputHistory(512);
+    private static final int[] heldKeys = new int[32];
+    private static final long[] heldKeyTimes = new long[heldKeys.length], heldMouseTimes = new long[MOUSE_BUTTONS];
+    private static int heldKeyCount;
+    private static InputLog recording, replay;
+    private static String recordPath, replayPath, title = "";
+    private static long tick, replayStart;
+    private static boolean cursorHidden, dirtyRendering, overlay;
+    private static JFrame frame;
+    private static JLabel view;
+    private static DirtyRegions dirty;
+    private static BufferedImage screen;
+    private static Background background;
+    private static Rectangle screenArea;
     
     /**
      * Initializes the game and runs the window method.
@@ -47,7 +65,7 @@ public abstract class Game {
      * @return The width of the screen.
      */
     public static int getWidth() {
-        return getDimensions().width;
+        return width;
     }
     
     /**
@@ -55,7 +73,7 @@ public abstract class Game {
      * @return The height of the screen.
      */
     public static int getHeight() {
-        return getDimensions().height;
+        return height;
     }
     
     /**
@@ -110,11 +128,22 @@ public abstract class Game {
     }
     
     /**
-     * Returns the current background image.
+     * Returns the amount of frames that were actually completed in the last second,
+     * which can be lower than the FPS the game is set to run at.
+     * @return The measured FPS of the game.
+     */
+    public static double getActualFPS() {
+        return Profiler.getActualFPS();
+    }
+    
+    /**
+     * Returns the current background image.<br>
+     * <b>Note</b>: For solid color and tiled backgrounds the image is built the first time this is called.
      * @return The current background image set for the game.
      */
     public static BufferedImage getBackground() {
-        return background;
+        if (background == null) background = new Background(Color.BLACK);
+        return background.toImage(width, height);
     }
     
     /**
@@ -122,7 +151,7 @@ public abstract class Game {
      * @return The title displayed at the top of the game window.
      */
     public static String getTitle() {
-        return frame.getTitle();
+        return title;
     }
     
     /**
@@ -134,6 +163,38 @@ public abstract class Game {
         return new Position(-at.getTranslateX() + width / 2, -at.getTranslateY() + height / 2);
     }
     
+    /**
+     * Returns the number of the current frame, starting at zero for the first frame after setup.
+     * @return The amount of frames that were completed.
+     */
+    public static long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Returns true if the game only redraws the parts of the screen that changed.
+     * @return True if dirty rectangle rendering is turned on.
+     */
+    public static boolean isDirtyRendering() {
+        return dirtyRendering;
+    }
+    
+    static void setTick(long tick) {
+        Game.tick = tick;
+    }
+    
+    static void setPainter(Graphics2D painter) {
+        graphics = painter;
+    }
+    
+    /**
+     * Returns true if the game is replaying a recorded input log instead of reading the user input.
+     * @return True if the game is running a replay.
+     */
+    public static boolean isReplaying() {
+        return replay != null;
+    }
+    
     /**
      * Returns true if any object in the game is currently being dragged.
      * @return True if any object in the game is currently being dragged.
@@ -147,7 +208,8 @@ public abstract class Game {
      * @param title The new title for the game window.
      */
     protected void setTitle(String title) {
-        frame.setTitle(title);
+        Game.title = title;
+        if (frame != null) frame.setTitle(title);
     }
     
     /**
@@ -155,11 +217,7 @@ public abstract class Game {
      * @param color The color the background should be.
      */
     protected void setBackground(Color color) {
-        background = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D back = background.createGraphics();
-        back.setColor(color);
-        back.fillRect(0, 0, width, height);
-        back.dispose();
+        background = new Background(color);
     }
     
     /**
@@ -168,20 +226,18 @@ public abstract class Game {
      * @param image The image or tile to be used for the background.
      */
     protected void setBackground(BufferedImage image) {
-        background = image;
-    }
-    
-    private void fixBackground() {
-        if (background == Tools.UNDEFINED_IMAGE) setBackground(Color.BLACK);
-        else if (background.getWidth() != width || background.getHeight() != height) {
-            BufferedImage newBackground = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D back = newBackground.createGraphics();
-            for (int x = 0; x < newBackground.getWidth(); x += background.getWidth())
-                for (int y = 0; y < newBackground.getHeight(); y += background.getHeight())
-                    back.drawImage(background, x, y, null);
-            background = newBackground.getSubimage(0, 0, width, height);
-            back.dispose();
-        }
+        setBackground(image, 0);
+    }
+    
+    /**
+     * Sets a tiled image as a background that scrolls with the camera. The image is
+     * prepared once and then tiled directly, so scrolling costs no extra memory.
+     * @param image The image or tile to be used for the background.
+     * @param scroll How fast the background scrolls compared to the camera, where zero
+     * keeps it still, one moves it with the sprites and values in between give a parallax effect.
+     */
+    protected void setBackground(BufferedImage image, double scroll) {
+        background = new Background(image, scroll, BufferedImage.TYPE_INT_ARGB);
     }
     
     /**
@@ -235,10 +291,79 @@ public abstract class Game {
      * @param hide True to hide the cursor, false to display it again.
      */
     protected void hideCursor(boolean hide) {
+        cursorHidden = hide;
+        if (frame == null) return;
         if (hide) frame.setCursor(frame.getToolkit().createCustomCursor(Tools.UNDEFINED_IMAGE, new Point(), null));
         else frame.setCursor(Cursor.getDefaultCursor());
     }
     
+    /**
+     * Records the input of every frame and the random seed into a binary log file,
+     * which can later be replayed with the replay input method.<br>
+     * <b>Note</b>: This function will not work after the create function is executed.
+     * @param path The location of the log file on the file system.
+     */
+    protected void recordInput(String path) {
+        recordPath = path;
+    }
+    
+    /**
+     * Replays a log file made with the record input method instead of reading the user input.
+     * The game runs without a window and as fast as possible, and the create method returns
+     * once the end of the log is reached.<br>
+     * <b>Note</b>: This function will not work after the create function is executed.
+     * @param path The location of the log file on the file system.
+     */
+    protected void replayInput(String path) {
+        replayPath = path;
+    }
+    
+    /**
+     * Turns on dirty rectangle rendering, which is useful for mostly static scenes such as
+     * card or board games. Instead of redrawing the whole screen every frame, the graphics
+     * drawn in a frame are compared with the previous frame and only the regions where
+     * something appeared, moved, changed or disappeared are redrawn and displayed.<br>
+     * <b>Note</b>: Only objects drawn with their draw methods are tracked. Anything drawn
+     * directly with the painter is only kept where nothing is redrawn over it.
+     * This function will not work after the create function is executed.
+     * @param dirty True to only redraw the changed parts of the screen.
+     */
+    protected void setDirtyRendering(boolean dirty) {
+        dirtyRendering = dirty;
+    }
+    
+    /**
+     * Shows or hides an overlay in the top left corner of the screen with the measured FPS
+     * and the times of every section of the frame. Showing the overlay also enables the profiler.
+     * @param show True to show the profiler overlay, false to hide it.
+     */
+    protected void showProfiler(boolean show) {
+        overlay = show;
+        if (show) Profiler.setEnabled(true);
+    }
+    
+    /**
+     * Forces an area of the screen to be redrawn in the current frame when dirty rectangle
+     * rendering is turned on, for example after drawing directly with the painter.
+     * @param area The area to redraw, relative to the camera.
+     */
+    public static void markDirty(Area area) {
+        if (dirty != null) dirty.mark(graphics.getTransform().createTransformedShape(
+                new Rectangle((int) area.x, (int) area.y, area.width, area.height)).getBounds());
+    }
+    
+    /**
+     * Forces the whole screen to be redrawn in the current frame when dirty rectangle
+     * rendering is turned on.
+     */
+    public static void markDirty() {
+        if (dirty != null) dirty.markAll();
+    }
+    
+    static DirtyRegions dirtyRegions() {
+        return dirty;
+    }
+    
     static void setDragging(boolean drag) {
         dragging = drag;
     }
@@ -302,8 +427,7 @@ public abstract class Game {
      * @return True if any mouse button was just pressed.
      */
     public static boolean mouseEngaged() {
-        for (Integer button : mouse) if (!prevMouse.contains(button)) return true;
-        return false;
+        return (mouse & ~prevMouse) != 0;
     }
     
     /**
@@ -313,7 +437,7 @@ public abstract class Game {
      * @return True if the specified mouse button was just pressed.
      */
     public static boolean mouseEngaged(int button) {
-        return mouse.contains(button) && !prevMouse.contains(button);
+        return contains(mouse, button) && !contains(prevMouse, button);
     }
     
     /**
@@ -321,8 +445,7 @@ public abstract class Game {
      * @return True if any mouse button was just released.
      */
     public static boolean mouseReleased() {
-        for (Integer button : prevMouse) if (!mouse.contains(button)) return true;
-        return false;
+        return (prevMouse & ~mouse) != 0;
     }
     
     /**
@@ -332,7 +455,7 @@ public abstract class Game {
      * @return True if the specified mouse button was just released.
      */
     public static boolean mouseReleased(int button) {
-        return prevMouse.contains(button) && !mouse.contains(button);
+        return contains(prevMouse, button) && !contains(mouse, button);
     }
     
     /**
@@ -340,7 +463,7 @@ public abstract class Game {
      * @return True if any button on the mouse is currently pressed.
      */
     public static boolean mousePressed() {
-        return !mouse.isEmpty();
+        return mouse != 0;
     }
     
     /**
@@ -350,7 +473,7 @@ public abstract class Game {
      * @return True if one of the mouse buttons being pressed down matches the input.
      */
     public static boolean mousePressed(int button) {
-        return mouse.contains(button);
+        return contains(mouse, button);
     }
     
     /**
@@ -385,7 +508,7 @@ public abstract class Game {
      * @return True if any button on the keyboard was just pressed.
      */
     public static boolean keyEngaged() {
-        for (Integer key : keys) if (!prevKeys.contains(key)) return true;
+        for (int i = 0; i < keys.length; i++) if ((keys[i] & ~prevKeys[i]) != 0) return true;
         return false;
     }
     
@@ -396,7 +519,7 @@ public abstract class Game {
      * @return True if the specified key was just pressed.
      */
     public static boolean keyEngaged(int key) {
-        return keys.contains(key) && !prevKeys.contains(key);
+        return contains(keys, key) && !contains(prevKeys, key);
     }
     
     /**
@@ -404,7 +527,7 @@ public abstract class Game {
      * @return True if any button on the keyboard was just released.
      */
     public static boolean keyReleased() {
-        for (Integer key : prevKeys) if (!keys.contains(key)) return true;
+        for (int i = 0; i < keys.length; i++) if ((prevKeys[i] & ~keys[i]) != 0) return true;
         return false;
     }
     
@@ -415,7 +538,7 @@ public abstract class Game {
      * @return True if the specified key was just released.
      */
     public static boolean keyReleased(int key) {
-        return prevKeys.contains(key) && !keys.contains(key);
+        return contains(prevKeys, key) && !contains(keys, key);
     }
     
     /**
@@ -423,7 +546,8 @@ public abstract class Game {
      * @return True if any button on the keyboard is currently pressed.
      */
     public static boolean keyPressed() {
-        return !keys.isEmpty();
+        for (long word : keys) if (word != 0) return true;
+        return false;
     }
     
     /**
@@ -433,26 +557,266 @@ public abstract class Game {
      * @return True if one of the keys being pressed down matches the input.
      */
     public static boolean keyPressed(int key) {
-        return keys.contains(key);
+        return contains(keys, key);
+    }
+    
+    /**
+     * Returns the history of the most recent key and mouse events, which includes
+     * the exact order and time of every event that arrived since the last frame.
+     * @return The input history of the game.
+     */
+    public static InputHistory inputHistory() {
+        return history;
+    }
+    
+    /**
+     * Checks if the specified key was held down at any point since the last frame,
+     * even if it was pressed and released in between frames.
+     * @param key An integer representing the key being searched for
+     * (use the key event class to find the right integer).
+     * @return True if the key was down at any time since the last frame.
+     */
+    public static boolean keyPressedDuringFrame(int key) {
+        return pressedDuringFrame(key, InputHistory.KEY_PRESS, InputHistory.KEY_RELEASE, keyPressed(key));
+    }
+    
+    /**
+     * Checks if the specified mouse button was held down at any point since the last frame,
+     * even if it was pressed and released in between frames.
+     * @param button An integer representing the mouse button being searched for
+     * (use the mouse event class to find the right integer).
+     * @return True if the mouse button was down at any time since the last frame.
+     */
+    public static boolean mousePressedDuringFrame(int button) {
+        return pressedDuringFrame(button, InputHistory.MOUSE_PRESS, InputHistory.MOUSE_RELEASE, mousePressed(button));
+    }
+    
+    private static boolean pressedDuringFrame(int code, int press, int release, boolean pressed) {
+        for (int i = history.tickIndex(); i < history.size(); i++) {
+            int type = history.getType(i);
+            if (history.getCode(i) == code && (type == press || type == release)) return true;
+        }
+        return pressed;
+    }
+    
+    /**
+     * Returns how long the specified key has been held down, measured at the start of the current frame.
+     * @param key An integer representing the key being searched for
+     * (use the key event class to find the right integer).
+     * @return The time in nanoseconds since the key was pressed or zero if it is not held down.
+     */
+    public static long keyHeldTime(int key) {
+        for (int i = 0; i < heldKeyCount; i++) if (heldKeys[i] == key) return frameTime - heldKeyTimes[i];
+        return 0;
+    }
+    
+    /**
+     * Returns how long the specified mouse button has been held down, measured at the start of the current frame.
+     * @param button An integer representing the mouse button being searched for
+     * (use the mouse event class to find the right integer).
+     * @return The time in nanoseconds since the button was pressed or zero if it is not held down.
+     */
+    public static long mouseHeldTime(int button) {
+        if (button < 0 || button >= MOUSE_BUTTONS || heldMouseTimes[button] == 0) return 0;
+        return frameTime - heldMouseTimes[button];
+    }
+    
+    private static void holdKey(int key, long time) {
+        for (int i = 0; i < heldKeyCount; i++) if (heldKeys[i] == key) return;
+        if (heldKeyCount < heldKeys.length) {
+            heldKeys[heldKeyCount] = key;
+            heldKeyTimes[heldKeyCount] = time;
+            heldKeyCount++;
+        }
+    }
+    
+    private static void releaseKey(int key) {
+        for (int i = 0; i < heldKeyCount; i++) {
+            if (heldKeys[i] == key) {
+                heldKeyCount--;
+                heldKeys[i] = heldKeys[heldKeyCount];
+                heldKeyTimes[i] = heldKeyTimes[heldKeyCount];
+                return;
+            }
+        }
+    }
+    
+    private static boolean contains(long[] set, int key) {
+        return key >= 0 && key < KEY_CODES && (set[key >>> 6] & (1L << key)) != 0;
+    }
+    
+    private static boolean contains(long set, int button) {
+        return button >= 0 && button < MOUSE_BUTTONS && (set & (1L << button)) != 0;
+    }
+    
+    /**
+     * Moves the current input state to the previous state and applies all events
+     * that arrived since the last frame. Keys that were both pressed and released
+     * before this frame stay pressed for one frame so the press is not lost.
+     * Every event is also added to the input history, and written to the input log
+     * when recording or read from it when replaying.
+     */
+    private static void pollInput() {
+        frameTime = System.nanoTime();
+        history.startTick();
+        System.arraycopy(keys, 0, prevKeys, 0, keys.length);
+        prevMouse = mouse;
+        if (late) {
+            for (int i = 0; i < keys.length; i++) keys[i] &= ~lateKeys[i];
+            Arrays.fill(lateKeys, 0);
+            mouse &= ~lateMouse;
+            lateMouse = 0;
+            late = false;
+        }
+        if (replay != null) {
+            frameTime = replayStart + replay.getFrameTime();
+            for (int i = 0; i < replay.getEventCount(); i++)
+                applyInput(replay.getEvent(i), replayStart + replay.getEventTime(i));
+            mouseX = replay.getMouseX();
+            mouseY = replay.getMouseY();
+            return;
+        }
+        for (int event = input.poll(); event != InputQueue.EMPTY; event = input.poll()) {
+            applyInput(event, input.polledTime());
+            if (recording != null) recording.addEvent(event, input.polledTime());
+        }
+        mouseX = rawMouseX;
+        mouseY = rawMouseY;
+        if (recording != null && !recording.writeFrame(frameTime, mouseX, mouseY)) stopRecording();
+    }
+    
+    private static void stopRecording() {
+        InputLog log = recording;
+        recording = null;
+        if (log != null) log.close();
+    }
+    
+    private static void applyInput(int event, long time) {
+        int code = InputQueue.code(event);
+        int type = InputQueue.type(event);
+        if (type != InputQueue.CLEAR) history.record(event, time);
+        switch (type) {
+            case InputQueue.KEY_PRESS:
+                holdKey(code, time);
+                if (code < KEY_CODES) {
+                    keys[code >>> 6] |= 1L << code;
+                    lateKeys[code >>> 6] &= ~(1L << code);
+                }
+                break;
+            case InputQueue.KEY_RELEASE:
+                releaseKey(code);
+                if (code >= KEY_CODES) break;
+                if (contains(keys, code) && !contains(prevKeys, code)) {
+                    lateKeys[code >>> 6] |= 1L << code;
+                    late = true;
+                }
+                else keys[code >>> 6] &= ~(1L << code);
+                break;
+            case InputQueue.MOUSE_PRESS:
+                if (code < MOUSE_BUTTONS) {
+                    if (heldMouseTimes[code] == 0) heldMouseTimes[code] = time;
+                    mouse |= 1L << code;
+                    lateMouse &= ~(1L << code);
+                }
+                break;
+            case InputQueue.MOUSE_RELEASE:
+                if (code >= MOUSE_BUTTONS) break;
+                heldMouseTimes[code] = 0;
+                if (contains(mouse, code) && !contains(prevMouse, code)) {
+                    lateMouse |= 1L << code;
+                    late = true;
+                }
+                else mouse &= ~(1L << code);
+                break;
+            case InputQueue.CLEAR:
+                Arrays.fill(keys, 0);
+                Arrays.fill(lateKeys, 0);
+                mouse = 0;
+                lateMouse = 0;
+                heldKeyCount = 0;
+                Arrays.fill(heldMouseTimes, 0);
+                break;
+        }
     }
     
     /**
      * Initializes the game and creates the window. Calls the setup method
-     * after creating the window and then loops the run method at the specified FPS.<br>
+     * after creating the window and then loops the run method at the specified FPS.
+     * When replaying an input log no window is created and this method returns
+     * after the last recorded frame.<br>
      * <b>Note</b>: This function should only be executed in the main method and only once.
      */
     protected void create() {
         screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
         graphics = screen.createGraphics();
-        fixBackground();
+        screenArea = new Rectangle(0, 0, width, height);
+        if (background == null) background = new Background(Color.BLACK);
+        if (dirtyRendering) dirty = new DirtyRegions(width, height);
         
+        if (replayPath != null) {
+            replay = InputLog.open(replayPath);
+            if (replay == null) return;
+            Tools.setSeed(replay.getSeed());
+            replayStart = System.nanoTime();
+        }
+        else {
+            if (recordPath != null) {
+                Tools.setSeed(Tools.getSeed());
+                recording = InputLog.create(recordPath, Tools.getSeed());
+                Runtime.getRuntime().addShutdownHook(new Thread(Game::stopRecording));
+            }
+            openWindow();
+        }
+        
+        setup();
+        double timeStart = System.nanoTime();
+        while (true) {
+            if (replay != null || System.nanoTime() - timeStart > 1000000000 / fps) {
+                timeStart = System.nanoTime();
+                if (replay != null && !replay.readFrame()) break;
+                Object frameEvent = Recorder.beginFrame();
+                long frameStart = Profiler.start(), section = frameStart;
+                pollInput();
+                section = Profiler.stop(Profiler.Section.INPUT, section);
+                if (dirty == null) background.draw(graphics, screenArea);
+                else dirty.begin(tick);
+                section = Profiler.stop(Profiler.Section.BACKGROUND, section);
+                Object runEvent = Recorder.beginRun();
+                run();
+                Recorder.endRun(runEvent, tick);
+                section = Profiler.stop(Profiler.Section.RUN, section);
+                present();
+                Profiler.stop(Profiler.Section.PRESENT, section);
+                Profiler.endFrame(frameStart);
+                Recorder.endFrame(frameEvent, tick, fps);
+                Metrics.tick();
+                tick++;
+            }
+        }
+        replay.close();
+        replay = null;
+    }
+    
+    private static void present() {
+        if (dirty != null) dirty.finish(graphics, background, view);
+        if (overlay) {
+            Rectangle area = Profiler.paint(graphics);
+            if (dirty != null && view != null) view.repaint(area);
+        }
+        if (frame != null && dirty == null) frame.repaint();
+    }
+    
+    private void openWindow() {
+        frame = new JFrame(title);
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.addKeyListener(keyControl);
         frame.addWindowListener(windowControl);
         frame.setResizable(false);
+        hideCursor(cursorHidden);
         
         JPanel panel = new JPanel();
-        panel.add(new JLabel(new ImageIcon(screen)));
+        view = new JLabel(new ImageIcon(screen));
+        panel.add(view);
         panel.addMouseMotionListener(moveControl);
         panel.addMouseListener(clickControl);
         
@@ -465,24 +829,6 @@ public abstract class Game {
         frame.setVisible(true);
         frame.setSize(width + 7, height + 34);
         frame.setLocationRelativeTo(null);
-        
-        setup();
-        double timeStart = System.nanoTime();
-        while (true) {
-            if (System.nanoTime() - timeStart > 1000000000 / fps) {
-                timeStart = System.nanoTime();
-                Position prev = getPainterCenter();
-                centerPainterOn(getCenter());
-                fixBackground();
-                graphics.clearRect(-width, -height, width * 3, height * 3);
-                graphics.drawImage(background, 0, 0, null);
-                centerPainterOn(prev);
-                run();
-                prevKeys = new HashSet<>(keys);
-                prevMouse = new HashSet<>(mouse);
-                frame.repaint();
-            }
-        }
     }
     
     /**
@@ -505,58 +851,55 @@ public abstract class Game {
     private final KeyAdapter keyControl = new KeyAdapter() {
         @Override
         public void keyPressed(KeyEvent key) {
-            keys.add(key.getKeyCode());
+            input.offer(InputQueue.KEY_PRESS, key.getKeyCode());
         }
         
         @Override
         public void keyReleased(KeyEvent key) {
-            keys.remove(key.getKeyCode());
+            input.offer(InputQueue.KEY_RELEASE, key.getKeyCode());
         }
     };
 
     private final MouseMotionAdapter moveControl = new MouseMotionAdapter() {
         @Override
         public void mouseDragged(MouseEvent me) {
-            mouseX = me.getX() - 1;
-            mouseY = me.getY() - 5;
+            rawMouseX = me.getX() - 1;
+            rawMouseY = me.getY() - 5;
         }
         
         @Override
         public void mouseMoved(MouseEvent me) {
-            mouseX = me.getX() - 1;
-            mouseY = me.getY() - 5;
+            rawMouseX = me.getX() - 1;
+            rawMouseY = me.getY() - 5;
         }
     };
 
     private final MouseAdapter clickControl = new MouseAdapter() {
         @Override
         public void mousePressed(MouseEvent me) {
-            mouse.add(me.getButton());
+            input.offer(InputQueue.MOUSE_PRESS, me.getButton());
         }
         
         @Override
         public void mouseReleased(MouseEvent me) {
-            mouse.remove(me.getButton());
+            input.offer(InputQueue.MOUSE_RELEASE, me.getButton());
         }
     };
     
     private final WindowAdapter windowControl = new WindowAdapter() {
         @Override
         public void windowIconified(WindowEvent we) {
-            keys = new HashSet<>();
-            mouse = new HashSet<>();
+            input.offer(InputQueue.CLEAR, 0);
         }
         
         @Override
         public void windowLostFocus(WindowEvent we) {
-            keys = new HashSet<>();
-            mouse = new HashSet<>();
+            input.offer(InputQueue.CLEAR, 0);
         }
         
         @Override
         public void windowDeactivated(WindowEvent we) {
-            keys = new HashSet<>();
-            mouse = new HashSet<>();
+            input.offer(InputQueue.CLEAR, 0);
         }
     };
     //</editor-fold>
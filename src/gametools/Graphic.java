@@ -241,6 +241,26 @@ public class Graphic extends Area {
         angle = Tools.fixAngle(ang);
     }
 
+    @Override
+    double getOrientedAngle() {
+        return angle;
+    }
+    
+    @Override
+    int getOrientedWidth() {
+        return animation.getWidth();
+    }
+    
+    @Override
+    int getOrientedHeight() {
+        return animation.getHeight();
+    }
+    
+    @Override
+    BufferedImage getMaskImage() {
+        return animation.getFrame();
+    }
+    
     /**
      * An empty method that runs before the draw method and should be overridden for custom code.
      */
@@ -271,7 +291,12 @@ public class Graphic extends Area {
             double trueX = getCenter().x - (animation.getWidth() / 2);
             double trueY = getCenter().y - (animation.getHeight() / 2);
             at.translate(trueX, trueY);
-            Game.painter().drawImage(animation.getFrame(), at, null);
+            DirtyRegions dirty = Game.dirtyRegions();
+            if (dirty == null) Game.painter().drawImage(animation.getFrame(), at, null);
+            else {
+                at.preConcatenate(Game.painter().getTransform());
+                dirty.submit(this, animation.getFrame(), null, at, animation.getWidth(), animation.getHeight());
+            }
         }
     }
 }
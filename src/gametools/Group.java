@@ -11,9 +11,30 @@ import java.util.List;
  * Class for managing and updating groups of sprites.
  */
 public class Group {
+    /**
+     * Creates and resets the sprites of a group that reuses its sprites.
+     */
+    public static abstract class Factory {
+        /**
+         * Creates a new sprite when the pool of the group is empty.
+         * @return A new sprite for the group.
+         */
+        public abstract Sprite create();
+        
+        /**
+         * Prepares a sprite from the pool to be used again, for example by moving it back
+         * to its starting position or restarting its animation. By default nothing is changed
+         * except that the sprite is no longer marked for removal and its velocity is zero.
+         * @param sprite The sprite that is about to be reused.
+         */
+        public void reset(Sprite sprite) {}
+    }
     private final List<Sprite> elements;
     private boolean removeSprites;
     private Area moveableArea = Area.UNDEFINED_AREA;
+    private RandomSource random;
+    private SpritePool pool;
+    private SpatialGrid index;
     
     /**
      * Creates a blank group with no sprites.
@@ -30,6 +51,7 @@ public class Group {
         elements = copy.elements;
         removeSprites = copy.removeSprites;
         moveableArea = copy.moveableArea;
+        pool = copy.pool;
     }
     
     /**
@@ -84,6 +106,25 @@ public class Group {
         return isWithin(new Area(pos, new Dimension()));
     }
     
+    /**
+     * Checks if at least one element is within the radius of the point, such as the
+     * radius of an explosion. Elements with a collider use their shape and the rest use their box.
+     * @param x The x of the center of the circle.
+     * @param y The y of the center of the circle.
+     * @param radius The radius of the circle.
+     * @return True if at least one element is within the circle.
+     */
+    public boolean isWithin(double x, double y, double radius) {
+        if (index != null) {
+            index.update(elements);
+            int found = index.collect(x - radius, y - radius, x + radius, y + radius);
+            for (int i = 0; i < found; i++) if (Collider.overlaps(x, y, x, y, radius, index.candidate(i))) return true;
+            return false;
+        }
+        for (Sprite sprite : elements) if (Collider.overlaps(x, y, x, y, radius, sprite)) return true;
+        return false;
+    }
+    
     /**
      * Checks if at least one element is colliding with the passed in object.
      * @param obj The object to test collision against.
@@ -159,9 +200,16 @@ public class Group {
      * @return True if any two elements between the groups collide.
      */
     public boolean isWithin(List<Sprite> sprites, Area.Collision method) {
-        for (Sprite current : elements)
-            for (Sprite sprite : sprites)
-                if (current.isWithin(sprite, method)) return true;
+        Object event = Recorder.beginCollisionQuery();
+        for (Sprite current : elements) {
+            for (Sprite sprite : sprites) {
+                if (current.isWithin(sprite, method)) {
+                    Recorder.endCollisionQuery(event, elements.size(), sprites.size(), 1);
+                    return true;
+                }
+            }
+        }
+        Recorder.endCollisionQuery(event, elements.size(), sprites.size(), 0);
         return false;
     }
     
@@ -225,6 +273,7 @@ public class Group {
      * @return An array list containing all the colliding sprites.
      */
     public List<Sprite> getAllWithin(List<Sprite> sprites, Area.Collision method) {
+        Object event = Recorder.beginCollisionQuery();
         List<Sprite> results = new ArrayList<>();
         for (Sprite element : elements) {
             for (Sprite sprite : sprites) {
@@ -234,6 +283,7 @@ public class Group {
                 }
             }
         }
+        Recorder.endCollisionQuery(event, elements.size(), sprites.size(), results.size());
         return results;
     }
     
@@ -258,6 +308,27 @@ public class Group {
         return getAllWithin(new Area(pos, new Dimension()));
     }
     
+    /**
+     * Returns all sprites from the group that are within the radius of the point, such as the
+     * radius of an explosion, as a new array list. Sprites with a collider use their shape
+     * and the rest use their box.
+     * @param x The x of the center of the circle.
+     * @param y The y of the center of the circle.
+     * @param radius The radius of the circle.
+     * @return An array list containing all sprites that are within the circle.
+     */
+    public List<Sprite> getAllWithin(double x, double y, double radius) {
+        List<Sprite> colliding = new ArrayList<>();
+        if (index != null) {
+            index.update(elements);
+            int found = index.collect(x - radius, y - radius, x + radius, y + radius);
+            for (int i = 0; i < found; i++) if (Collider.overlaps(x, y, x, y, radius, index.candidate(i))) colliding.add(index.candidate(i));
+            return colliding;
+        }
+        for (Sprite sprite : elements) if (Collider.overlaps(x, y, x, y, radius, sprite)) colliding.add(sprite);
+        return colliding;
+    }
+    
     /**
      * Returns all sprites from the group that are colliding with the specified
      * object as a new array list.
@@ -281,6 +352,70 @@ public class Group {
         return colliding;
     }
     
+    /**
+     * Casts a ray through the group and returns the first sprite whose box it hits. Sprites
+     * that contain the origin are ignored, so a sprite can cast rays from its own center.
+     * @param x The x of the origin of the ray.
+     * @param y The y of the origin of the ray.
+     * @param angle The direction of the ray in radians.
+     * @param maxDist The furthest distance from the origin to test.
+     * @return The first sprite hit and where it was hit, or null if no sprite was hit.
+     */
+    public RayHit raycast(double x, double y, double angle, double maxDist) {
+        if (index != null) {
+            index.update(elements);
+            return index.raycast(x, y, angle, maxDist);
+        }
+        double dx = Math.cos(angle), dy = Math.sin(angle), inverseX = 1 / dx, inverseY = 1 / dy, best = maxDist;
+        Sprite hit = null;
+        for (Sprite sprite : elements) {
+            double distance = RayHit.distance(sprite, x, y, inverseX, inverseY, best);
+            if (distance >= 0) {
+                best = distance;
+                hit = sprite;
+            }
+        }
+        return hit == null? null : new RayHit(hit, best, x + dx * best, y + dy * best);
+    }
+    
+    /**
+     * Casts a ray through the group and returns the first sprite whose box it hits. Sprites
+     * that contain the origin are ignored, so a sprite can cast rays from its own center.
+     * @param origin The origin of the ray.
+     * @param angle The direction of the ray in radians.
+     * @param maxDist The furthest distance from the origin to test.
+     * @return The first sprite hit and where it was hit, or null if no sprite was hit.
+     */
+    public RayHit raycast(Position origin, double angle, double maxDist) {
+        return raycast(origin.x, origin.y, angle, maxDist);
+    }
+    
+    /**
+     * Casts several rays from the same origin through the group, such as the view cone of
+     * an enemy. The spatial index is brought up to date once for all of the rays.
+     * @param origin The origin of the rays.
+     * @param angles The direction of every ray in radians.
+     * @param maxDist The furthest distance from the origin to test.
+     * @return The hit of every ray in the same order as the angles, which is null for rays that hit nothing.
+     */
+    public RayHit[] raycast(Position origin, double[] angles, double maxDist) {
+        RayHit[] hits = new RayHit[angles.length];
+        for (int i = 0; i < angles.length; i++) hits[i] = raycast(origin.x, origin.y, angles[i], maxDist);
+        return hits;
+    }
+    
+    /**
+     * Checks that no sprite of the group blocks the straight line between the two points.
+     * Sprites that contain the first point are ignored.
+     * @param from The point to look from.
+     * @param to The point to look at.
+     * @return True if the line between the points does not hit any sprite.
+     */
+    public boolean hasLineOfSight(Position from, Position to) {
+        double dx = to.x - from.x, dy = to.y - from.y;
+        return raycast(from.x, from.y, Math.atan2(dy, dx), Math.sqrt(dx * dx + dy * dy)) == null;
+    }
+    
     /**
      * Returns the size of the group.
      * @return The amount of elements contained in the group.
@@ -289,6 +424,90 @@ public class Group {
         return elements.size();
     }
     
+    /**
+     * Takes a sprite from the pool of the group, or creates one with the factory if the
+     * pool is empty, and adds it to the end of the group. Sprites that are removed from
+     * the group while it is drawn are put back into the pool automatically.<br>
+     * <b>Note</b>: A pool has to be set before sprites can be obtained.
+     * @return A reset sprite that was added to the group.
+     */
+    public Sprite obtain() {
+        if (pool == null) throw new IllegalStateException("The group has no pool, call setPool first");
+        Sprite sprite = pool.obtain();
+        elements.add(sprite);
+        changed();
+        return sprite;
+    }
+    
+    /**
+     * Puts a sprite that is no longer used into the pool of the group, unless the pool is full.
+     * To recycle a sprite that is still in the group, mark it for removal instead. Releasing
+     * a sprite that is already waiting in the pool does nothing.
+     * @param sprite The sprite to reuse, which should not be in the group.
+     */
+    public void release(Sprite sprite) {
+        if (pool != null) pool.release(sprite);
+    }
+    
+    /**
+     * Returns the amount of sprites waiting in the pool to be reused.
+     * @return The size of the pool or zero if the group has no pool.
+     */
+    public int getPoolSize() {
+        return pool == null? 0 : pool.size();
+    }
+    
+    /**
+     * Returns the most sprites the pool keeps for reuse.
+     * @return The capacity of the pool or zero if the group has no pool.
+     */
+    public int getPoolCapacity() {
+        return pool == null? 0 : pool.getCapacity();
+    }
+    
+    /**
+     * Returns the amount of obtained sprites that were taken from the pool.
+     * @return The amount of pool hits.
+     */
+    public long getPoolHits() {
+        return pool == null? 0 : pool.getHits();
+    }
+    
+    /**
+     * Returns the amount of obtained sprites that had to be created because the pool was empty.
+     * @return The amount of pool misses.
+     */
+    public long getPoolMisses() {
+        return pool == null? 0 : pool.getMisses();
+    }
+    
+    /**
+     * Returns the fraction of obtained sprites that were reused from the pool.
+     * @return A number from zero to one, or zero if no sprites were obtained yet.
+     */
+    public double getPoolHitRate() {
+        long total = getPoolHits() + getPoolMisses();
+        return total == 0? 0 : getPoolHits() / (double) total;
+    }
+    
+    /**
+     * Returns the random source of the group, which is split from the random source
+     * of the current thread the first time it is needed. Giving every group its own
+     * source keeps their random sequences independent of each other.
+     * @return The random source of the group.
+     */
+    public RandomSource random() {
+        if (random == null) random = Tools.random().split();
+        return random;
+    }
+    
+    /**
+     * Returns the random source of the group without creating one.
+     */
+    RandomSource getRandom() {
+        return random;
+    }
+    
     /**
      * Returns whether or not the group is removing sprites outside their boundaries.
      * @return True if the group is removing sprites.
@@ -303,6 +522,7 @@ public class Group {
      */
     public void add(Sprite sprite) {
         elements.add(sprite);
+        changed();
     }
     
     /**
@@ -312,6 +532,7 @@ public class Group {
      */
     public void add(int i, Sprite sprite) {
         elements.add(i, sprite);
+        changed();
     }
     
     /**
@@ -336,6 +557,7 @@ public class Group {
      */
     public void add(List<Sprite> sprites) {
         elements.addAll(sprites);
+        changed();
     }
     
     /**
@@ -347,6 +569,7 @@ public class Group {
     public void clear(boolean safe) {
         if (!safe) elements.clear();
         else for (Sprite sprite : elements) sprite.remove(true);
+        changed();
     }
     
     /**
@@ -355,6 +578,7 @@ public class Group {
      */
     public void remove(int i) {
         elements.remove(i);
+        changed();
     }
     
     /**
@@ -363,6 +587,7 @@ public class Group {
      */
     public void remove(Sprite sprite) {
         elements.remove(sprite);
+        changed();
     }
     
     /**
@@ -371,6 +596,7 @@ public class Group {
      */
     public void remove(Group sprites) {
         elements.removeAll(sprites.getAll());
+        changed();
     }
     
     /**
@@ -387,6 +613,7 @@ public class Group {
      */
     public void remove(List<Sprite> sprites) {
         elements.removeAll(sprites);
+        changed();
     }
     
     /**
@@ -407,6 +634,75 @@ public class Group {
         removeSprites = true;
     }
     
+    /**
+     * Makes the group reuse its sprites instead of discarding them, which avoids creating
+     * thousands of short lived objects for things like bullets.
+     * @param factory The factory used to create new sprites and reset reused ones.
+     * @param capacity The most sprites to keep in the pool for reuse.
+     */
+    public void setPool(Factory factory, int capacity) {
+        pool = new SpritePool(factory, capacity);
+    }
+    
+    /**
+     * Sorts the sprites of the group into a grid of square cells, so raycasts and radius
+     * queries only test the sprites near them instead of every sprite. The grid is rebuilt
+     * at most once per frame when it is first queried, or sooner when the group changes.
+     * Sprites that move while the draw all method updates them are found at their new
+     * positions by queries later in the same update.<br>
+     * <b>Note</b>: Sprites moved in other ways after the first query of a frame are found at
+     * their old cells until the update spatial index method is called.
+     * @param cellSize The width and height of a cell, which works best around the size of a sprite.
+     */
+    public void setSpatialIndex(double cellSize) {
+        index = new SpatialGrid(cellSize);
+    }
+    
+    /**
+     * Rebuilds the spatial index of the group right away with the current positions of the sprites.
+     */
+    public void updateSpatialIndex() {
+        if (index != null) index.build(elements);
+    }
+    
+    /**
+     * Stops sorting the sprites of the group into a grid, so every query tests every sprite.
+     */
+    public void removeSpatialIndex() {
+        index = null;
+    }
+    
+    /**
+     * Returns whether the group keeps a spatial index of its sprites.
+     * @return True if the group has a spatial index.
+     */
+    public boolean hasSpatialIndex() {
+        return index != null;
+    }
+    
+    /**
+     * Changes the most sprites the pool keeps for reuse, discarding any extra sprites.
+     * @param capacity The new capacity of the pool.
+     */
+    public void setPoolCapacity(int capacity) {
+        if (pool != null) pool.setCapacity(capacity);
+    }
+    
+    /**
+     * Stops reusing sprites and discards the pool.
+     */
+    public void removePool() {
+        pool = null;
+    }
+    
+    /**
+     * Sets a custom random source for the group.
+     * @param random The random source the group should use.
+     */
+    public void setRandom(RandomSource random) {
+        this.random = random;
+    }
+    
     /**
      * Adds a custom script to each sprite.
      * @param script The script to add to the sprites.
@@ -478,14 +774,29 @@ public class Group {
      * Runs the draw method on every sprite and removes sprites as necessary.
      */
     public void drawAll() {
+        long start = Profiler.start();
+        int position = 0;
         for (Iterator<Sprite> it = elements.iterator(); it.hasNext();) {
             Sprite sprite = it.next();
             sprite.draw(Graphic.UpdateType.UPDATE_ONLY);
+            if (index != null) index.moved(position++, sprite);
             if (sprite.markedForRemoval()) it.remove();
             else if (removeSprites && moveableArea != Area.UNDEFINED_AREA && !sprite.isWithin(moveableArea)) it.remove();
+            else continue;
+            if (pool != null) pool.release(sprite);
         }
+        changed();
+        start = Profiler.stop(Profiler.Section.UPDATE, start);
         Collections.reverse(elements);
         for (Iterator<Sprite> it = elements.iterator(); it.hasNext();) it.next().draw(Graphic.UpdateType.DRAW_ONLY);
         Collections.reverse(elements);
+        Profiler.stop(Profiler.Section.DRAW, start);
+    }
+    
+    /**
+     * Marks the spatial index as out of date after sprites were added, removed or moved.
+     */
+    void changed() {
+        if (index != null) index.invalidate();
     }
 }
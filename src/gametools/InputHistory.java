@@ -0,0 +1,140 @@
+package gametools;
+
+/**
+ * A bounded record of the most recent key and mouse events in the order they happened,
+ * each stamped with the time it was received. Events are indexed from the oldest
+ * one still kept (zero) to the newest one (one less than the size).
+ */
+public final class InputHistory {
+    /**
+     * The event type for a key being pressed down.
+     */
+    public static final int KEY_PRESS = InputQueue.KEY_PRESS;
+    /**
+     * The event type for a key being released.
+     */
+    public static final int KEY_RELEASE = InputQueue.KEY_RELEASE;
+    /**
+     * The event type for a mouse button being pressed down.
+     */
+    public static final int MOUSE_PRESS = InputQueue.MOUSE_PRESS;
+    /**
+     * The event type for a mouse button being released.
+     */
+    public static final int MOUSE_RELEASE = InputQueue.MOUSE_RELEASE;
+    private int[] events;
+    private long[] times;
+    private long total, tickStart;
+    
+    InputHistory(int capacity) {
+        setCapacity(capacity);
+    }
+    
+    /**
+     * Returns the amount of events currently kept in the history.
+     * @return The amount of events that can be looked up.
+     */
+    public int size() {
+        return (int) Math.min(total, events.length);
+    }
+    
+    /**
+     * Returns the most events the history can keep before the oldest ones are discarded.
+     * @return The capacity of the history.
+     */
+    public int getCapacity() {
+        return events.length;
+    }
+    
+    /**
+     * Returns the amount of events that arrived since the last frame. These are
+     * always the newest events in the history.
+     * @return The amount of events applied in the current frame.
+     */
+    public int tickSize() {
+        return (int) Math.min(total - tickStart, events.length);
+    }
+    
+    /**
+     * Returns the index of the first event that arrived since the last frame.
+     * @return The index of the oldest event applied in the current frame.
+     */
+    public int tickIndex() {
+        return size() - tickSize();
+    }
+    
+    /**
+     * Returns the type of the event at the specified index.
+     * @param i The index of the event.
+     * @return One of the event type constants.
+     */
+    public int getType(int i) {
+        return InputQueue.type(events[slot(i)]);
+    }
+    
+    /**
+     * Returns the key code or mouse button of the event at the specified index.
+     * @param i The index of the event.
+     * @return The key code for key events or the button for mouse events.
+     */
+    public int getCode(int i) {
+        return InputQueue.code(events[slot(i)]);
+    }
+    
+    /**
+     * Returns the time the event at the specified index was received.
+     * @param i The index of the event.
+     * @return The time of the event in nanoseconds, comparable with the system nano time.
+     */
+    public long getTime(int i) {
+        return times[slot(i)];
+    }
+    
+    /**
+     * Checks if the event at the specified index was for a key.
+     * @param i The index of the event.
+     * @return True for key presses and releases, false for mouse events.
+     */
+    public boolean isKey(int i) {
+        int type = getType(i);
+        return type == KEY_PRESS || type == KEY_RELEASE;
+    }
+    
+    /**
+     * Checks if the event at the specified index was a press.
+     * @param i The index of the event.
+     * @return True for key and mouse presses, false for releases.
+     */
+    public boolean isPress(int i) {
+        int type = getType(i);
+        return type == KEY_PRESS || type == MOUSE_PRESS;
+    }
+    
+    /**
+     * Sets the most events the history can keep and removes all events currently in it.<br>
+     * <b>Note</b>: This allocates a new buffer and should not be called every frame.
+     * @param capacity The amount of events to keep.
+     */
+    public void setCapacity(int capacity) {
+        events = new int[Math.max(capacity, 1)];
+        times = new long[events.length];
+        total = 0;
+        tickStart = 0;
+    }
+    
+    private int slot(int i) {
+        if (i < 0 || i >= size()) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size());
+        return (int) ((total - size() + i) % events.length);
+    }
+    
+    void startTick() {
+        tickStart = total;
+    }
+    
+    void record(int event, long time) {
+        int slot = (int) (total % events.length);
+        events[slot] = event;
+        times[slot] = time;
+        total++;
+    }
+}
@@ -0,0 +1,218 @@
+package gametools;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads and writes the binary log used to record and replay the input of a game.
+ * The log starts with a header containing the random seed, followed by one record
+ * for every frame with the time since the previous frame, the mouse position if it
+ * moved and the input events applied in that frame.
+ */
+final class InputLog {
+    private static final int MAGIC = 0x47544952, VERSION = 1, BUFFER_SIZE = 1 << 16;
+    private static final int MOVED = 1, EVENTS = 2, END = 0xFF;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final boolean writing;
+    private long seed, last = -1, frameTime;
+    private int mouseX = Integer.MIN_VALUE, mouseY = Integer.MIN_VALUE, count;
+    private int[] events = new int[64];
+    private long[] times = new long[64];
+    
+    private InputLog(FileChannel channel, boolean writing) {
+        this.channel = channel;
+        this.writing = writing;
+    }
+    
+    /**
+     * Creates a new log file, replacing any existing file at the path.
+     * @param path The location of the log file on the file system.
+     * @param seed The random seed to store in the header.
+     * @return The log ready to be written to or null if the file could not be created.
+     */
+    static InputLog create(String path, long seed) {
+        try {
+            InputLog log = new InputLog(FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), true);
+            log.seed = seed;
+            log.buffer.putInt(MAGIC).putInt(VERSION).putLong(seed);
+            return log;
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors creating the input log '" + path + "':");
+            System.err.println(ex.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * Opens an existing log file for reading.
+     * @param path The location of the log file on the file system.
+     * @return The log ready to be read or null if the file could not be opened.
+     */
+    static InputLog open(String path) {
+        try {
+            InputLog log = new InputLog(FileChannel.open(Paths.get(path), StandardOpenOption.READ), false);
+            log.buffer.limit(0);
+            if (!log.fill(16) || log.buffer.getInt() != MAGIC || log.buffer.getInt() != VERSION) {
+                log.close();
+                System.err.println("The file '" + path + "' is not a valid input log");
+                return null;
+            }
+            log.seed = log.buffer.getLong();
+            return log;
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors opening the input log '" + path + "':");
+            System.err.println(ex.toString());
+            return null;
+        }
+    }
+    
+    long getSeed() {
+        return seed;
+    }
+    
+    long getFrameTime() {
+        return frameTime;
+    }
+    
+    int getMouseX() {
+        return mouseX;
+    }
+    
+    int getMouseY() {
+        return mouseY;
+    }
+    
+    int getEventCount() {
+        return count;
+    }
+    
+    int getEvent(int i) {
+        return events[i];
+    }
+    
+    long getEventTime(int i) {
+        return times[i];
+    }
+    
+    /**
+     * Adds an event to the frame currently being recorded.
+     * @param event The encoded event from the input queue.
+     * @param time The time the event was received.
+     */
+    void addEvent(int event, long time) {
+        if (count == events.length) {
+            events = Arrays.copyOf(events, count * 2);
+            times = Arrays.copyOf(times, count * 2);
+        }
+        events[count] = event;
+        times[count] = time;
+        count++;
+    }
+    
+    /**
+     * Writes the record for a frame containing all the events added since the last frame.
+     * @param time The time at the start of the frame.
+     * @param x The x position of the mouse.
+     * @param y The y position of the mouse.
+     * @return False if the log could not be written to.
+     */
+    boolean writeFrame(long time, int x, int y) {
+        if (last < 0) last = time;
+        boolean moved = x != mouseX || y != mouseY;
+        int flags = (moved? MOVED : 0) | (count > 0? EVENTS : 0);
+        try {
+            if (buffer.remaining() < 15 + count * 8) flush();
+            buffer.put((byte) flags).putInt((int) Math.min(time - last, Integer.MAX_VALUE));
+            if (moved) buffer.putInt(x).putInt(y);
+            if (count > 0) {
+                buffer.putShort((short) count);
+                for (int i = 0; i < count; i++)
+                    buffer.putInt(events[i]).putInt((int) Math.min(time - times[i], Integer.MAX_VALUE));
+            }
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors writing the input log:");
+            System.err.println(ex.toString());
+            return false;
+        }
+        last = time;
+        mouseX = x;
+        mouseY = y;
+        count = 0;
+        return true;
+    }
+    
+    /**
+     * Reads the record of the next frame.
+     * @return True if a frame was read, false if the end of the log was reached.
+     */
+    boolean readFrame() {
+        count = 0;
+        try {
+            if (!fill(1)) return false;
+            int flags = buffer.get() & 0xFF;
+            if (flags == END || !fill(4)) return false;
+            frameTime += buffer.getInt();
+            if ((flags & MOVED) != 0) {
+                if (!fill(8)) return false;
+                mouseX = buffer.getInt();
+                mouseY = buffer.getInt();
+            }
+            if ((flags & EVENTS) != 0) {
+                if (!fill(2)) return false;
+                int total = buffer.getShort() & 0xFFFF;
+                for (int i = 0; i < total; i++) {
+                    if (!fill(8)) return false;
+                    int event = buffer.getInt();
+                    addEvent(event, frameTime - buffer.getInt());
+                }
+            }
+            return true;
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors reading the input log:");
+            System.err.println(ex.toString());
+            return false;
+        }
+    }
+    
+    /**
+     * Writes any buffered frames and closes the file.
+     */
+    void close() {
+        try {
+            if (writing) {
+                if (buffer.remaining() < 1) flush();
+                buffer.put((byte) END);
+                flush();
+            }
+            channel.close();
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors closing the input log:");
+            System.err.println(ex.toString());
+        }
+    }
+    
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+    
+    private boolean fill(int needed) throws IOException {
+        if (buffer.remaining() >= needed) return true;
+        buffer.compact();
+        while (buffer.position() < needed) if (channel.read(buffer) < 0) break;
+        buffer.flip();
+        return buffer.remaining() >= needed;
+    }
+}
@@ -0,0 +1,86 @@
+package gametools;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock free ring buffer used to pass input events from the window thread to the game thread.<br>
+ * <b>Note</b>: Only one thread may offer events and only one other thread may poll them.
+ */
+final class InputQueue {
+    /**
+     * The value returned when there are no events left in the queue.
+     */
+    static final int EMPTY = -1;
+    static final int KEY_PRESS = 0, KEY_RELEASE = 1, MOUSE_PRESS = 2, MOUSE_RELEASE = 3, CLEAR = 4;
+    private final int[] events;
+    private final long[] times;
+    private final int mask;
+    private long polledTime;
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+    
+    /**
+     * Creates a queue that can hold the specified amount of events at once.
+     * @param capacity The maximum amount of events waiting in the queue, rounded up to a power of two.
+     */
+    InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        events = new int[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+    
+    /**
+     * Adds an event to the end of the queue and stamps it with the current time.
+     * If the queue is full the event is dropped.
+     * @param type The type of the event.
+     * @param code The key code or mouse button of the event.
+     * @return True if the event was added.
+     */
+    boolean offer(int type, int code) {
+        long current = tail.get();
+        if (current - head.get() >= events.length) return false;
+        events[(int) current & mask] = (type << 24) | (code & 0xFFFFFF);
+        times[(int) current & mask] = System.nanoTime();
+        tail.lazySet(current + 1);
+        return true;
+    }
+    
+    /**
+     * Removes the event at the front of the queue.
+     * @return The encoded event or the empty constant if there are no events.
+     */
+    int poll() {
+        long current = head.get();
+        if (current == tail.get()) return EMPTY;
+        int event = events[(int) current & mask];
+        polledTime = times[(int) current & mask];
+        head.lazySet(current + 1);
+        return event;
+    }
+    
+    /**
+     * Returns the time the last polled event was added to the queue.
+     * @return The time of the last polled event in nanoseconds.
+     */
+    long polledTime() {
+        return polledTime;
+    }
+    
+    /**
+     * Returns the type of an encoded event.
+     * @param event The event returned by the poll method.
+     * @return The type of the event.
+     */
+    static int type(int event) {
+        return event >>> 24;
+    }
+    
+    /**
+     * Returns the key code or mouse button of an encoded event.
+     * @param event The event returned by the poll method.
+     * @return The key code or mouse button of the event.
+     */
+    static int code(int event) {
+        return event & 0xFFFFFF;
+    }
+}
@@ -0,0 +1,115 @@
+package gametools;
+
+import java.util.PriorityQueue;
+
+/**
+ * A transport that delivers packets between two ends in the same program after a
+ * simulated delay, which is useful for testing online games on one computer. Packets
+ * can be delayed by a random jitter, which also makes them arrive out of order, and
+ * a part of them can be dropped.
+ */
+public final class LoopbackTransport extends Transport {
+    private static final class Packet {
+        final byte[] bytes;
+        final long time, order;
+        
+        Packet(byte[] bytes, long time, long order) {
+            this.bytes = bytes;
+            this.time = time;
+            this.order = order;
+        }
+    }
+    private final PriorityQueue<Packet> incoming = new PriorityQueue<>(16, (first, second) -> {
+        int result = Long.compare(first.time, second.time);
+        return result != 0? result : Long.compare(first.order, second.order);
+    });
+    private final RandomSource random;
+    private LoopbackTransport other;
+    private long latency, jitter, order;
+    private double loss;
+    
+    private LoopbackTransport(long seed) {
+        random = RandomSource.create(seed);
+    }
+    
+    /**
+     * Creates the two connected ends of a loopback transport.
+     * @param latency The time in milliseconds every packet takes to arrive.
+     * @return An array with both ends of the transport.
+     */
+    public static LoopbackTransport[] pair(double latency) {
+        return pair(latency, 0, 0);
+    }
+    
+    /**
+     * Creates the two connected ends of a loopback transport.
+     * @param latency The shortest time in milliseconds a packet takes to arrive.
+     * @param jitter The most extra time in milliseconds a packet can randomly take to arrive.
+     * @param loss The chance from zero to one that a packet is dropped.
+     * @return An array with both ends of the transport.
+     */
+    public static LoopbackTransport[] pair(double latency, double jitter, double loss) {
+        LoopbackTransport first = new LoopbackTransport(1), second = new LoopbackTransport(2);
+        first.other = second;
+        second.other = first;
+        for (LoopbackTransport end : new LoopbackTransport[] {first, second}) {
+            end.setLatency(latency);
+            end.setJitter(jitter);
+            end.setLoss(loss);
+        }
+        return new LoopbackTransport[] {first, second};
+    }
+    
+    /**
+     * Returns the amount of packets sent to this end that have not been received yet.
+     * @return The amount of packets on their way.
+     */
+    public synchronized int getPending() {
+        return incoming.size();
+    }
+    
+    /**
+     * Sets the shortest time packets sent from this end take to arrive.
+     * @param latency The latency in milliseconds.
+     */
+    public synchronized void setLatency(double latency) {
+        this.latency = (long) (Math.max(latency, 0) * 1000000);
+    }
+    
+    /**
+     * Sets the most extra time packets sent from this end can randomly take to arrive.
+     * @param jitter The jitter in milliseconds.
+     */
+    public synchronized void setJitter(double jitter) {
+        this.jitter = (long) (Math.max(jitter, 0) * 1000000);
+    }
+    
+    /**
+     * Sets the chance that a packet sent from this end is dropped.
+     * @param loss The chance from zero to one.
+     */
+    public synchronized void setLoss(double loss) {
+        this.loss = loss;
+    }
+    
+    @Override
+    public void send(byte[] packet) {
+        long time;
+        synchronized (this) {
+            if (loss > 0 && random.nextDouble() < loss) return;
+            time = System.nanoTime() + latency + (jitter > 0? (long) (random.nextDouble() * jitter) : 0);
+        }
+        other.deliver(packet.clone(), time);
+    }
+    
+    @Override
+    public synchronized byte[] receive() {
+        Packet next = incoming.peek();
+        if (next == null || next.time > System.nanoTime()) return null;
+        return incoming.poll().bytes;
+    }
+    
+    private synchronized void deliver(byte[] packet, long time) {
+        incoming.add(new Packet(packet, time, order++));
+    }
+}
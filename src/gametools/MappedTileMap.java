@@ -0,0 +1,305 @@
+package gametools;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A tile map for very large levels that reads its tiles straight from a memory mapped level
+ * file instead of keeping them on the heap. The file stores the tiles in rows of blocks and is
+ * mapped in segments the first time a tile in them is needed, so the operating system only
+ * loads the pages that are actually read, either to draw them around the camera or for
+ * collision. A limited amount of rows of blocks are kept open as views of the mapped file,
+ * and the row that was used the longest time ago is closed when the limit is reached. A
+ * segment is unmapped as soon as none of its rows are open, so only the segments of the open
+ * rows stay mapped. On runtimes that cannot unmap a buffer right away the released segments
+ * are unmapped by the garbage collector instead.<br>
+ * <b>Note</b>: Tiles are stored as shorts, so tile indices must be below 32768. A mapped
+ * tile map should only be used from one thread at a time.
+ */
+public class MappedTileMap extends TileMap {
+    private static final int MAGIC = 0x47544C56, VERSION = 1, HEADER = 32;
+    private static final int CHUNK_TILES = CHUNK_SIZE * CHUNK_SIZE, SEGMENT = 1 << 26;
+    private static final MethodHandle UNMAP;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final ShortBuffer[] bands;
+    private final MappedByteBuffer[] segments;
+    private final int bandsPerSegment;
+    private final long[] used;
+    private final int[] openRows;
+    private int[] resident;
+    private int residentCount, last = -1;
+    private long counter;
+    
+    static {
+        MethodHandle unmap = null;
+        MethodType action = MethodType.methodType(void.class, ByteBuffer.class);
+        try {
+            Class<?> unsafe = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafe.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            unmap = MethodHandles.lookup().findVirtual(unsafe, "invokeCleaner", action).bindTo(instance.get(null));
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+            try {
+                Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                Method clean = cleaner.getReturnType().getMethod("clean");
+                unmap = MethodHandles.filterReturnValue(MethodHandles.lookup().unreflect(cleaner),
+                        MethodHandles.lookup().unreflect(clean)).asType(action);
+            }
+            catch (ReflectiveOperationException | LinkageError | RuntimeException java8) {}
+        }
+        UNMAP = unmap;
+    }
+    
+    private MappedTileMap(BufferedImage[] tileset, int columns, int rows, FileChannel channel, FileChannel.MapMode mode) {
+        super(tileset, columns, rows, null, false);
+        this.channel = channel;
+        this.mode = mode;
+        bands = new ShortBuffer[getChunkRows()];
+        bandsPerSegment = (int) Math.max(1, SEGMENT / bandSize());
+        segments = new MappedByteBuffer[(bands.length + bandsPerSegment - 1) / bandsPerSegment];
+        openRows = new int[segments.length];
+        used = new long[bands.length];
+        resident = new int[Math.min(64, bands.length)];
+    }
+    
+    /**
+     * Opens a level file written with the write method. The file is opened for writing
+     * if possible so changes to tiles are saved to it.
+     * @param path The location of the level file on the file system.
+     * @param tileset The images of the tiles, which should all have the same size.
+     * @return The tile map or null if the file could not be opened.
+     */
+    public static MappedTileMap open(String path, BufferedImage[] tileset) {
+        FileChannel channel = null;
+        try {
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_WRITE;
+            try {
+                channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            catch (IOException | SecurityException ex) {
+                channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+                mode = FileChannel.MapMode.READ_ONLY;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < HEADER || header.getInt() != MAGIC || header.getInt() != VERSION
+                    || header.getInt(16) != CHUNK_SIZE) {
+                channel.close();
+                System.err.println("The file '" + path + "' is not a valid level file");
+                return null;
+            }
+            return new MappedTileMap(tileset, header.getInt(8), header.getInt(12), channel, mode);
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors opening the level '" + path + "':");
+            System.err.println(ex.toString());
+            try {
+                if (channel != null) channel.close();
+            }
+            catch (IOException close) {}
+            return null;
+        }
+    }
+    
+    /**
+     * Writes a level file that can be opened as a mapped tile map, replacing any existing file.
+     * @param path The location of the level file on the file system.
+     * @param map The tile map whose tiles should be written.
+     * @return True if the file was written.
+     */
+    public static boolean write(String path, TileMap map) {
+        int columns = map.getColumns(), rows = map.getRows();
+        int chunkColumns = (columns + CHUNK_SIZE - 1) / CHUNK_SIZE, chunkRows = (rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            header.putInt(MAGIC).putInt(VERSION).putInt(columns).putInt(rows).putInt(CHUNK_SIZE).clear();
+            while (header.hasRemaining()) channel.write(header);
+            ByteBuffer band = ByteBuffer.allocateDirect(chunkColumns * CHUNK_TILES * 2).order(ByteOrder.LITTLE_ENDIAN);
+            for (int chunkRow = 0; chunkRow < chunkRows; chunkRow++) {
+                band.clear();
+                for (int chunkColumn = 0; chunkColumn < chunkColumns; chunkColumn++)
+                    for (int y = 0; y < CHUNK_SIZE; y++)
+                        for (int x = 0; x < CHUNK_SIZE; x++)
+                            band.putShort((short) map.get(chunkColumn * CHUNK_SIZE + x, chunkRow * CHUNK_SIZE + y));
+                band.flip();
+                while (band.hasRemaining()) channel.write(band);
+            }
+            return true;
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors writing the level '" + path + "':");
+            System.err.println(ex.toString());
+            return false;
+        }
+    }
+    
+    /**
+     * Writes a level file from an array of tile indices, replacing any existing file.
+     * @param path The location of the level file on the file system.
+     * @param columns The amount of tiles in every row.
+     * @param rows The amount of tiles in every column.
+     * @param tiles The index in the tileset of every tile, row by row from the top left.
+     * @return True if the file was written.
+     */
+    public static boolean write(String path, int columns, int rows, int[] tiles) {
+        return write(path, new TileMap(new BufferedImage[] {Tools.UNDEFINED_IMAGE}, columns, rows, tiles));
+    }
+    
+    @Override
+    public int get(int column, int row) {
+        if (column < 0 || row < 0 || column >= getColumns() || row >= getRows()) return EMPTY;
+        ShortBuffer band = band(row / CHUNK_SIZE);
+        return band == null? EMPTY : band.get(offset(column, row));
+    }
+    
+    /**
+     * Changes the tile at the specified cell, which is also saved to the level file
+     * unless the file could only be opened for reading.
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @param tile The index of the tile in the tileset or the empty constant.
+     */
+    @Override
+    public void set(int column, int row, int tile) {
+        if (column < 0 || row < 0 || column >= getColumns() || row >= getRows() || mode == FileChannel.MapMode.READ_ONLY) return;
+        ShortBuffer band = band(row / CHUNK_SIZE);
+        if (band == null) return;
+        band.put(offset(column, row), (short) tile);
+        invalidate(column, row);
+    }
+    
+    /**
+     * Replaces all tiles of the map and saves them to the level file.
+     * @param tiles The index in the tileset of every tile, row by row from the top left.
+     */
+    @Override
+    public void setTiles(int[] tiles) {
+        if (tiles.length != getColumns() * getRows())
+            throw new IllegalArgumentException("Expected " + getColumns() * getRows() + " tiles but got " + tiles.length);
+        for (int row = 0; row < getRows(); row++)
+            for (int column = 0; column < getColumns(); column++) set(column, row, tiles[row * getColumns() + column]);
+    }
+    
+    /**
+     * Returns the amount of rows of blocks that are currently open.
+     * @return The amount of open rows of blocks.
+     */
+    public int getOpenRows() {
+        return residentCount;
+    }
+    
+    /**
+     * Sets the most rows of blocks that stay open at once.
+     * @param limit The most rows of blocks to keep open.
+     */
+    public void setOpenRowLimit(int limit) {
+        limit = Math.max(limit, 1);
+        while (residentCount > limit) evict();
+        resident = Arrays.copyOf(resident, limit);
+    }
+    
+    /**
+     * Unmaps and releases the level file. The map can no longer be used afterwards.
+     */
+    public void close() {
+        while (residentCount > 0) evict();
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors closing the level:");
+            System.err.println(ex.toString());
+        }
+    }
+    
+    @Override
+    void prepare(int firstColumn, int firstRow, int lastColumn, int lastRow) {
+        for (int row = Math.max(firstRow - 1, 0); row <= Math.min(lastRow + 1, bands.length - 1); row++) band(row);
+    }
+    
+    private int offset(int column, int row) {
+        return (column / CHUNK_SIZE) * CHUNK_TILES + (row % CHUNK_SIZE) * CHUNK_SIZE + column % CHUNK_SIZE;
+    }
+    
+    private ShortBuffer band(int row) {
+        used[row] = ++counter;
+        if (row == last) return bands[row];
+        ShortBuffer band = bands[row];
+        if (band == null) {
+            if (residentCount == resident.length) evict();
+            MappedByteBuffer segment = segment(row / bandsPerSegment);
+            if (segment == null) return null;
+            ByteBuffer view = segment.duplicate();
+            int start = (int) ((row % bandsPerSegment) * bandSize());
+            view.position(start).limit(start + (int) bandSize());
+            band = view.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            bands[row] = band;
+            resident[residentCount++] = row;
+            openRows[row / bandsPerSegment]++;
+        }
+        last = row;
+        return band;
+    }
+    
+    private MappedByteBuffer segment(int index) {
+        if (segments[index] == null) {
+            long start = (long) index * bandsPerSegment * bandSize();
+            long size = Math.min(bandsPerSegment, bands.length - (long) index * bandsPerSegment) * bandSize();
+            try {
+                segments[index] = channel.map(mode, HEADER + start, size);
+            }
+            catch (IOException ex) {
+                System.err.println("There were errors reading the level:");
+                System.err.println(ex.toString());
+            }
+        }
+        return segments[index];
+    }
+    
+    /**
+     * Unmaps a segment right away if the runtime supports it, otherwise it is unmapped
+     * once the garbage collector frees it.
+     */
+    private static void unmap(MappedByteBuffer segment) {
+        if (UNMAP == null || segment == null) return;
+        try {
+            UNMAP.invokeExact((ByteBuffer) segment);
+        }
+        catch (Throwable ex) {}
+    }
+    
+    private long bandSize() {
+        return (long) getChunkColumns() * CHUNK_TILES * 2;
+    }
+    
+    private void evict() {
+        int oldest = 0;
+        for (int i = 1; i < residentCount; i++) if (used[resident[i]] < used[resident[oldest]]) oldest = i;
+        int row = resident[oldest];
+        bands[row] = null;
+        int segment = row / bandsPerSegment;
+        if (--openRows[segment] == 0) {
+            unmap(segments[segment]);
+            segments[segment] = null;
+        }
+        if (last == row) last = -1;
+        resident[oldest] = resident[--residentCount];
+    }
+}
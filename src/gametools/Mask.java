@@ -0,0 +1,84 @@
+package gametools;
+
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The solid pixels of an image packed into one bit each, with every row stored in whole
+ * longs so two masks can be tested 64 pixels at a time. Masks are built the first time an
+ * image is tested and kept for as long as the image is used, so all sprites that share the
+ * frames of an animation also share their masks.
+ */
+final class Mask {
+    private static final Map<BufferedImage, Mask> cache = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final int SOLID_ALPHA = 128;
+    private final int width, height, words;
+    private final long[] bits;
+    
+    private Mask(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        words = (width + 63) >> 6;
+        bits = new long[words * height];
+        boolean opaque = image.getTransparency() == Transparency.OPAQUE;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++)
+                if (opaque || row[x] >>> 24 >= SOLID_ALPHA) bits[y * words + (x >> 6)] |= 1L << (x & 63);
+        }
+    }
+    
+    /**
+     * Returns the mask of the image, which treats pixels that are at least half opaque as solid.
+     */
+    static Mask of(BufferedImage image) {
+        Mask mask = cache.get(image);
+        if (mask == null) {
+            mask = new Mask(image);
+            cache.put(image, mask);
+        }
+        return mask;
+    }
+    
+    /**
+     * Checks if any solid pixels overlap with another mask whose top left corner is offset by the distance.
+     */
+    boolean overlaps(Mask other, int dx, int dy) {
+        int left = Math.max(0, dx), right = Math.min(width, dx + other.width);
+        int top = Math.max(0, dy), bottom = Math.min(height, dy + other.height);
+        for (int y = top; y < bottom; y++)
+            for (int x = left; x < right; x += 64)
+                if ((get(y, x) & other.get(y - dy, x - dx)) != 0) return true;
+        return false;
+    }
+    
+    /**
+     * Checks if any pixels within the rectangle are solid.
+     */
+    boolean overlaps(int left, int top, int right, int bottom) {
+        left = Math.max(0, left);
+        right = Math.min(width, right);
+        for (int y = Math.max(0, top); y < Math.min(height, bottom); y++) {
+            for (int x = left; x < right; x += 64) {
+                long range = right - x >= 64? -1L : (1L << (right - x)) - 1;
+                if ((get(y, x) & range) != 0) return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the 64 pixels of the row starting from the column, where pixels outside the mask are empty.
+     */
+    private long get(int row, int column) {
+        int word = column >> 6, shift = column & 63, offset = row * words;
+        long low = word >= 0 && word < words? bits[offset + word] : 0;
+        if (shift == 0) return low;
+        long high = word + 1 >= 0 && word + 1 < words? bits[offset + word + 1] : 0;
+        return (low >>> shift) | (high << (64 - shift));
+    }
+}
@@ -0,0 +1,372 @@
+package gametools;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * A registry of engine counters and gauges for watching a game from outside the process,
+ * which is mostly useful for headless simulations and servers. Counters are striped so
+ * they can be increased from any thread for almost no cost, and gauges are read only when
+ * the metrics are exported. The engine keeps counters for ticks, collision tests, sound and
+ * tile caches and loaded images, and gauges for the frame rate, frame times, audio voices,
+ * garbage collection and memory allocated by the game thread. The metrics can be read over
+ * JMX or appended to a file as one JSON object per line.<br>
+ * <b>Note</b>: Exporting the metrics enables the profiler so the frame times are measured.
+ */
+public final class Metrics {
+    /**
+     * A number that only grows, such as the amount of times something happened.
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+        
+        private Counter() {}
+        
+        /**
+         * Increases the counter by one.
+         */
+        public void increment() {
+            value.increment();
+        }
+        
+        /**
+         * Increases the counter.
+         * @param amount The amount to add.
+         */
+        public void add(long amount) {
+            value.add(amount);
+        }
+        
+        /**
+         * Returns the current value of the counter.
+         * @return The sum of everything added to the counter.
+         */
+        public long get() {
+            return value.sum();
+        }
+    }
+    private static final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private static final Map<String, DoubleSupplier> gauges = new ConcurrentSkipListMap<>();
+    static final Counter TICKS = counter("ticks"), COLLISION_TESTS = counter("collision.tests"),
+            COLLISION_PRUNED = counter("collision.pruned"), SOUND_CACHE_HITS = counter("sound.cache.hits"),
+            SOUND_CACHE_MISSES = counter("sound.cache.misses"), CHUNK_CACHE_HITS = counter("tilemap.cache.hits"),
+            CHUNK_CACHE_MISSES = counter("tilemap.cache.misses"), IMAGES_LOADED = counter("images.loaded");
+    private static final int SAMPLE_TICKS = 64;
+    private static volatile long gameThread = -1;
+    private static volatile double allocationRate = Double.NaN;
+    private static long sampledTicks, sampledBytes = -1;
+    private static ScheduledExecutorService dumper;
+    private static Writer output;
+    private static boolean hooked;
+    private static ObjectName name;
+    
+    static {
+        gauge("ticks.perSecond", Game::getActualFPS);
+        gauge("frame.p50", () -> Profiler.getMedian(Profiler.Section.FRAME));
+        gauge("frame.p99", () -> Profiler.getPercentile(Profiler.Section.FRAME, 99));
+        gauge("frame.max", () -> Profiler.getMax(Profiler.Section.FRAME));
+        gauge("sound.voices", SoundMixer::getActiveVoices);
+        gauge("gc.count", () -> {
+            long total = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(bean.getCollectionCount(), 0);
+            return total;
+        });
+        gauge("gc.time", () -> {
+            long total = 0;
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) total += Math.max(bean.getCollectionTime(), 0);
+            return total;
+        });
+        gauge("allocated.bytes", Metrics::allocated);
+        gauge("allocated.perTick", () -> allocationRate);
+    }
+    
+    private Metrics() {}
+    
+    /**
+     * Returns the counter with the passed in name, creating it the first time.
+     * @param name The name of the counter, such as "enemies.spawned".
+     * @return The counter with the name.
+     */
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+    
+    /**
+     * Adds a gauge that is read every time the metrics are exported, replacing any
+     * gauge with the same name.
+     * @param name The name of the gauge.
+     * @param gauge The code that returns the current value of the gauge.
+     */
+    public static void gauge(String name, DoubleSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+    
+    /**
+     * Adds a gauge with the amount of sprites in the group.
+     * @param name The name of the group, which is exported as "group.name.sprites".
+     * @param group The group to watch.
+     */
+    public static void watch(String name, Group group) {
+        gauge("group." + name + ".sprites", group::size);
+    }
+    
+    /**
+     * Removes a gauge.
+     * @param name The name of the gauge.
+     */
+    public static void removeGauge(String name) {
+        gauges.remove(name);
+    }
+    
+    /**
+     * Returns the current value of a counter or gauge.
+     * @param name The name of the metric.
+     * @return The value of the metric or not a number if there is no metric with the name.
+     */
+    public static double get(String name) {
+        Counter counter = counters.get(name);
+        if (counter != null) return counter.get();
+        DoubleSupplier gauge = gauges.get(name);
+        return gauge != null? gauge.getAsDouble() : Double.NaN;
+    }
+    
+    /**
+     * Returns all the counters and gauges with their current values as a JSON object on one line.
+     * @return The metrics as JSON.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"time\":").append(System.currentTimeMillis());
+        json.append(",\"tick\":").append(Game.getTick());
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) append(json, entry.getKey(), entry.getValue().get());
+        for (Map.Entry<String, DoubleSupplier> entry : gauges.entrySet()) append(json, entry.getKey(), read(entry.getValue()));
+        return json.append('}').toString();
+    }
+    
+    /**
+     * Registers the metrics with the platform MBean server so they can be watched with
+     * tools such as JConsole under the name "gametools:type=Metrics".
+     * @return True if the metrics were registered.
+     */
+    public static synchronized boolean registerMBean() {
+        if (name != null) return true;
+        try {
+            ObjectName bean = new ObjectName("gametools:type=Metrics");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), bean);
+            name = bean;
+            Profiler.setEnabled(true);
+            return true;
+        }
+        catch (JMException ex) {
+            System.err.println("There were errors registering the metrics:");
+            System.err.println(ex.toString());
+            return false;
+        }
+    }
+    
+    /**
+     * Starts appending the metrics as one JSON object per line to a file at a fixed interval,
+     * from a background thread. A running dump to another file is stopped first.
+     * @param path The location of the file on the file system.
+     * @param seconds The time between two lines in seconds.
+     * @return True if the file could be opened.
+     */
+    public static synchronized boolean startDump(String path, double seconds) {
+        stopDump();
+        Writer writer;
+        try {
+            writer = new FileWriter(path, true);
+            if (!hooked) Runtime.getRuntime().addShutdownHook(new Thread(Metrics::stopDump));
+            hooked = true;
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors opening the metrics file '" + path + "':");
+            System.err.println(ex.toString());
+            return false;
+        }
+        Profiler.setEnabled(true);
+        output = writer;
+        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "GameTools Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper = service;
+        long period = Math.max(1, (long) (seconds * 1000));
+        service.scheduleAtFixedRate(() -> {
+            try {
+                writer.write(toJson());
+                writer.write('\n');
+                writer.flush();
+            }
+            catch (IOException ex) {
+                System.err.println("There were errors writing the metrics file '" + path + "':");
+                System.err.println(ex.toString());
+                abort(service, writer);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        return true;
+    }
+    
+    /**
+     * Returns true while the metrics are appended to a file. A dump stops on its own if
+     * the file cannot be written.
+     * @return True if a dump is running.
+     */
+    public static synchronized boolean isDumping() {
+        return dumper != null;
+    }
+    
+    /**
+     * Stops appending the metrics to a file.
+     */
+    public static synchronized void stopDump() {
+        if (dumper == null) return;
+        dumper.shutdown();
+        try {
+            dumper.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            output.close();
+        }
+        catch (IOException ex) {
+            System.err.println("There were errors closing the metrics file:");
+            System.err.println(ex.toString());
+        }
+        dumper = null;
+        output = null;
+    }
+    
+    /**
+     * Stops a dump that failed to write its file from its own thread, unless another dump
+     * replaced it in the meantime.
+     */
+    private static synchronized void abort(ScheduledExecutorService service, Writer writer) {
+        service.shutdown();
+        try {
+            writer.close();
+        }
+        catch (IOException ex) {}
+        if (dumper == service) {
+            dumper = null;
+            output = null;
+        }
+    }
+    
+    /**
+     * Counts a completed tick and remembers the thread that runs the game.
+     */
+    static void tick() {
+        if (gameThread < 0) gameThread = Thread.currentThread().getId();
+        TICKS.increment();
+        if (++sampledTicks < SAMPLE_TICKS) return;
+        double bytes = allocated();
+        if (sampledBytes >= 0) allocationRate = (bytes - sampledBytes) / sampledTicks;
+        sampledBytes = (long) bytes;
+        sampledTicks = 0;
+    }
+    
+    private static double allocated() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (gameThread < 0 || !(threads instanceof com.sun.management.ThreadMXBean)) return Double.NaN;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(gameThread);
+    }
+    
+    private static double read(DoubleSupplier gauge) {
+        try {
+            return gauge.getAsDouble();
+        }
+        catch (RuntimeException ex) {
+            return Double.NaN;
+        }
+    }
+    
+    private static void append(StringBuilder json, String name, double value) {
+        json.append(",\"");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < ' ') json.append(String.format("\\u%04x", (int) c));
+            else {
+                if (c == '"' || c == '\\') json.append('\\');
+                json.append(c);
+            }
+        }
+        json.append("\":");
+        if (Double.isNaN(value) || Double.isInfinite(value)) json.append("null");
+        else if (value == (long) value) json.append((long) value);
+        else json.append(value);
+    }
+    
+    private static final class Bean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Counter counter = counters.get(attribute);
+            if (counter != null) return counter.get();
+            DoubleSupplier gauge = gauges.get(attribute);
+            if (gauge == null) throw new AttributeNotFoundException(attribute);
+            return read(gauge);
+        }
+        
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                }
+                catch (AttributeNotFoundException ex) {}
+            }
+            return list;
+        }
+        
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("The metrics are read only");
+        }
+        
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+        
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+        
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[counters.size() + gauges.size()];
+            int i = 0;
+            for (String counter : counters.keySet())
+                if (i < attributes.length) attributes[i++] = new MBeanAttributeInfo(counter, "long", "Counter", true, false, false);
+            for (String gauge : gauges.keySet())
+                if (i < attributes.length) attributes[i++] = new MBeanAttributeInfo(gauge, "double", "Gauge", true, false, false);
+            return new MBeanInfo(Metrics.class.getName(), "Engine metrics of the game", Arrays.copyOf(attributes, i),
+                    null, null, null);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package gametools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * A grid of walkable and blocked cells used to find paths around obstacles, built from a group
+ * of obstacles or a tile map. Paths are found with A* over primitive arrays, and flow fields
+ * that lead every cell to the same target are cached so a whole horde chasing one target shares
+ * a single search. Searches can run in the background with a path task or a flow field task.<br>
+ * <b>Note</b>: Searches running in the background may see cells that are changed while they run,
+ * but a flow field built while cells changed is never cached.
+ */
+public final class NavGrid {
+    private static final double DIAGONAL = Math.sqrt(2);
+    private static final int[] DX = {1, 1, 0, -1, -1, -1, 0, 1}, DY = {0, 1, 1, 1, 0, -1, -1, -1};
+    private final double x, y, cellSize;
+    private final int columns, rows;
+    private final boolean[] blocked;
+    private final ConcurrentLinkedQueue<Search> searches = new ConcurrentLinkedQueue<>();
+    private final LinkedHashMap<Integer, FlowField> fields = new LinkedHashMap<>(16, 0.75f, true);
+    private int fieldLimit = 16, version;
+    private boolean diagonal = true;
+    
+    /**
+     * Creates a grid where every cell is walkable.
+     * @param x The x of the top left corner of the grid in the game.
+     * @param y The y of the top left corner of the grid in the game.
+     * @param columns The amount of cells in every row.
+     * @param rows The amount of cells in every column.
+     * @param cellSize The width and height of a cell in pixels.
+     */
+    public NavGrid(double x, double y, int columns, int rows, double cellSize) {
+        this.x = x;
+        this.y = y;
+        this.columns = Math.max(columns, 1);
+        this.rows = Math.max(rows, 1);
+        this.cellSize = cellSize;
+        blocked = new boolean[this.columns * this.rows];
+    }
+    
+    /**
+     * Creates a grid covering the area where every cell touched by a sprite of the group is blocked.
+     * @param obstacles The sprites that cannot be walked through.
+     * @param bounds The area the grid covers.
+     * @param cellSize The width and height of a cell in pixels.
+     * @return A new grid with the obstacles blocked.
+     */
+    public static NavGrid fromGroup(Group obstacles, Area bounds, double cellSize) {
+        NavGrid grid = new NavGrid(bounds.x, bounds.y, (int) Math.ceil(bounds.width / cellSize), (int) Math.ceil(bounds.height / cellSize), cellSize);
+        for (Sprite sprite : obstacles.getAll()) {
+            int left = Math.max(0, grid.getColumn(sprite.x)), top = Math.max(0, grid.getRow(sprite.y));
+            int right = Math.min(grid.columns - 1, grid.getColumn(Math.nextDown(sprite.x + sprite.width)));
+            int bottom = Math.min(grid.rows - 1, grid.getRow(Math.nextDown(sprite.y + sprite.height)));
+            for (int row = top; row <= bottom; row++)
+                for (int column = left; column <= right; column++) grid.blocked[row * grid.columns + column] = true;
+        }
+        return grid;
+    }
+    
+    /**
+     * Creates a grid with a cell for every tile of the map, where every tile that is not empty is blocked.
+     * @param map The tile map to build the grid from.
+     * @return A new grid with the same cells as the map.
+     */
+    public static NavGrid fromTileMap(TileMap map) {
+        return fromTileMap(map, tile -> tile != TileMap.EMPTY);
+    }
+    
+    /**
+     * Creates a grid with a cell for every tile of the map.
+     * @param map The tile map to build the grid from.
+     * @param solid Returns true for the tile indices that cannot be walked through.
+     * @return A new grid with the same cells as the map.
+     */
+    public static NavGrid fromTileMap(TileMap map, IntPredicate solid) {
+        if (map.getTileWidth() != map.getTileHeight()) throw new IllegalArgumentException("The tiles of the map must be square");
+        NavGrid grid = new NavGrid(map.getX(), map.getY(), map.getColumns(), map.getRows(), map.getTileWidth());
+        for (int row = 0; row < grid.rows; row++)
+            for (int column = 0; column < grid.columns; column++)
+                grid.blocked[row * grid.columns + column] = solid.test(map.get(column, row));
+        return grid;
+    }
+    
+    /**
+     * Returns the amount of cells in every row.
+     * @return The width of the grid in cells.
+     */
+    public int getColumns() {
+        return columns;
+    }
+    
+    /**
+     * Returns the amount of cells in every column.
+     * @return The height of the grid in cells.
+     */
+    public int getRows() {
+        return rows;
+    }
+    
+    /**
+     * Returns the width and height of a single cell.
+     * @return The size of a cell in pixels.
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+    
+    /**
+     * Returns the column that contains the x coordinate.
+     * @param x The x coordinate in the game.
+     * @return The column, which can be outside the grid.
+     */
+    public int getColumn(double x) {
+        return (int) Math.floor((x - this.x) / cellSize);
+    }
+    
+    /**
+     * Returns the row that contains the y coordinate.
+     * @param y The y coordinate in the game.
+     * @return The row, which can be outside the grid.
+     */
+    public int getRow(double y) {
+        return (int) Math.floor((y - this.y) / cellSize);
+    }
+    
+    /**
+     * Returns whether the cell cannot be walked through.
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @return True if the cell is blocked or outside the grid.
+     */
+    public boolean isBlocked(int column, int row) {
+        return column < 0 || row < 0 || column >= columns || row >= rows || blocked[row * columns + column];
+    }
+    
+    /**
+     * Returns whether paths can move diagonally between cells.
+     * @return True if diagonal movement is allowed.
+     */
+    public boolean isDiagonal() {
+        return diagonal;
+    }
+    
+    /**
+     * Blocks or clears a cell, which discards any cached flow fields.
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @param blocked True if the cell cannot be walked through.
+     */
+    public void setBlocked(int column, int row, boolean blocked) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) return;
+        this.blocked[row * columns + column] = blocked;
+        clearFlowFields();
+    }
+    
+    /**
+     * Sets whether paths can move diagonally between cells. Diagonal moves never cut
+     * the corner of a blocked cell. The default is true.
+     * @param diagonal True to allow diagonal movement.
+     */
+    public void setDiagonal(boolean diagonal) {
+        this.diagonal = diagonal;
+        clearFlowFields();
+    }
+    
+    /**
+     * Sets the most flow fields kept in the cache. When the limit is reached the field that
+     * was used the longest time ago is discarded.
+     * @param limit The most flow fields to cache.
+     */
+    public void setFlowFieldLimit(int limit) {
+        synchronized (fields) {
+            fieldLimit = Math.max(limit, 1);
+            for (Iterator<FlowField> it = fields.values().iterator(); fields.size() > fieldLimit && it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Discards all cached flow fields, which are rebuilt when they are requested again.
+     */
+    public void clearFlowFields() {
+        synchronized (fields) {
+            fields.clear();
+            version++;
+        }
+    }
+    
+    /**
+     * Finds the shortest path between the two points with A*.
+     * @param start The point the path starts from.
+     * @param goal The point the path leads to.
+     * @return The center of every cell along the path after the start, ending with the goal
+     * itself, or an empty list if the goal cannot be reached.
+     */
+    public List<Position> findPath(Position start, Position goal) {
+        return findPath(start.x, start.y, goal.x, goal.y);
+    }
+    
+    /**
+     * Finds the shortest path between the two points with A*.
+     * @param startX The x of the point the path starts from.
+     * @param startY The y of the point the path starts from.
+     * @param goalX The x of the point the path leads to.
+     * @param goalY The y of the point the path leads to.
+     * @return The center of every cell along the path after the start, ending with the goal
+     * itself, or an empty list if the goal cannot be reached.
+     */
+    public List<Position> findPath(double startX, double startY, double goalX, double goalY) {
+        int startColumn = getColumn(startX), startRow = getRow(startY), goalColumn = getColumn(goalX), goalRow = getRow(goalY);
+        if (isBlocked(goalColumn, goalRow) || startColumn < 0 || startRow < 0 || startColumn >= columns || startRow >= rows)
+            return new ArrayList<>();
+        int start = startRow * columns + startColumn, goal = goalRow * columns + goalColumn;
+        Search search = obtain();
+        search.push(start, 0, heuristic(startColumn, startRow, goalColumn, goalRow), -1);
+        while (search.size > 0) {
+            int node = search.pop();
+            if (node == goal) break;
+            int column = node % columns, row = node / columns;
+            for (int direction = 0; direction < 8; direction += diagonal? 1 : 2) {
+                int nextColumn = column + DX[direction], nextRow = row + DY[direction];
+                if (!canMove(column, row, direction)) continue;
+                int next = nextRow * columns + nextColumn;
+                double cost = search.cost[node] + ((direction & 1) == 0? 1 : DIAGONAL);
+                search.push(next, cost, cost + heuristic(nextColumn, nextRow, goalColumn, goalRow), node);
+            }
+        }
+        List<Position> path = new ArrayList<>();
+        if (search.isClosed(goal)) {
+            path.add(new Position(goalX, goalY));
+            for (int node = search.parent[goal]; node != start && node >= 0; node = search.parent[node])
+                path.add(new Position(x + (node % columns + 0.5) * cellSize, y + (node / columns + 0.5) * cellSize));
+            Collections.reverse(path);
+        }
+        searches.offer(search);
+        return path;
+    }
+    
+    /**
+     * Returns the flow field that leads every cell of the grid to the target, building it the
+     * first time the target cell is requested and reusing it afterwards.
+     * @param target The point the field leads to.
+     * @return The cached flow field of the cell containing the target.
+     */
+    public FlowField getFlowField(Position target) {
+        return getFlowField(target.x, target.y);
+    }
+    
+    /**
+     * Returns the flow field that leads every cell of the grid to the target, building it the
+     * first time the target cell is requested and reusing it afterwards.
+     * @param targetX The x of the point the field leads to.
+     * @param targetY The y of the point the field leads to.
+     * @return The cached flow field of the cell containing the target.
+     */
+    public FlowField getFlowField(double targetX, double targetY) {
+        int column = Math.min(Math.max(getColumn(targetX), 0), columns - 1), row = Math.min(Math.max(getRow(targetY), 0), rows - 1);
+        Integer key = row * columns + column;
+        int built;
+        synchronized (fields) {
+            FlowField field = fields.get(key);
+            if (field != null) return field;
+            built = version;
+        }
+        FlowField field = buildFlowField(key);
+        synchronized (fields) {
+            if (built != version) return field;
+            fields.put(key, field);
+            for (Iterator<FlowField> it = fields.values().iterator(); fields.size() > fieldLimit && it.hasNext();) {
+                it.next();
+                it.remove();
+            }
+        }
+        return field;
+    }
+    
+    /**
+     * Searches outward from the target to every reachable cell and points every cell at
+     * its neighbor closest to the target.
+     */
+    private FlowField buildFlowField(int target) {
+        float[] distances = new float[blocked.length];
+        byte[] directions = new byte[blocked.length];
+        Arrays.fill(distances, Float.POSITIVE_INFINITY);
+        Arrays.fill(directions, FlowField.NONE);
+        Search search = obtain();
+        if (!blocked[target]) search.push(target, 0, 0, -1);
+        while (search.size > 0) {
+            int node = search.pop();
+            distances[node] = (float) search.cost[node];
+            int column = node % columns, row = node / columns;
+            for (int direction = 0; direction < 8; direction += diagonal? 1 : 2) {
+                if (!canMove(column, row, direction)) continue;
+                int next = (row + DY[direction]) * columns + column + DX[direction];
+                double cost = search.cost[node] + ((direction & 1) == 0? 1 : DIAGONAL);
+                if (search.push(next, cost, cost, node)) directions[next] = (byte) ((direction + 4) & 7);
+            }
+        }
+        if (!blocked[target]) directions[target] = FlowField.ARRIVED;
+        searches.offer(search);
+        return new FlowField(x, y, columns, rows, cellSize, distances, directions);
+    }
+    
+    private boolean canMove(int column, int row, int direction) {
+        int nextColumn = column + DX[direction], nextRow = row + DY[direction];
+        if (isBlocked(nextColumn, nextRow)) return false;
+        return (direction & 1) == 0 || (!isBlocked(nextColumn, row) && !isBlocked(column, nextRow));
+    }
+    
+    private double heuristic(int column, int row, int goalColumn, int goalRow) {
+        int dx = Math.abs(column - goalColumn), dy = Math.abs(row - goalRow);
+        if (!diagonal) return dx + dy;
+        return Math.max(dx, dy) + (DIAGONAL - 1) * Math.min(dx, dy);
+    }
+    
+    /**
+     * Takes the state of a finished search to reuse, so searches running at the same time
+     * on different threads never share their arrays.
+     */
+    private Search obtain() {
+        Search search = searches.poll();
+        if (search == null) search = new Search(blocked.length);
+        search.begin();
+        return search;
+    }
+    
+    /**
+     * The reusable state of a search on one thread, with the open set kept in a binary heap
+     * of cell indices ordered by their estimated total cost. Cells are marked with the number
+     * of the search instead of clearing the arrays before every search.
+     */
+    private static final class Search {
+        private final int[] heap, position, seen, closed, parent;
+        private final double[] cost, estimate;
+        private int size, stamp;
+        
+        private Search(int cells) {
+            heap = new int[cells];
+            position = new int[cells];
+            seen = new int[cells];
+            closed = new int[cells];
+            parent = new int[cells];
+            cost = new double[cells];
+            estimate = new double[cells];
+        }
+        
+        private void begin() {
+            size = 0;
+            if (++stamp == 0) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(closed, 0);
+                stamp = 1;
+            }
+        }
+        
+        private boolean isClosed(int node) {
+            return closed[node] == stamp;
+        }
+        
+        /**
+         * Adds the cell to the open set or lowers its cost if the new route is cheaper.
+         * @return True if the cell was added or its cost was lowered.
+         */
+        private boolean push(int node, double cost, double estimate, int parent) {
+            if (closed[node] == stamp) return false;
+            if (seen[node] == stamp) {
+                if (cost >= this.cost[node]) return false;
+                this.cost[node] = cost;
+                this.estimate[node] = estimate;
+                this.parent[node] = parent;
+                up(position[node]);
+                return true;
+            }
+            seen[node] = stamp;
+            this.cost[node] = cost;
+            this.estimate[node] = estimate;
+            this.parent[node] = parent;
+            heap[size] = node;
+            position[node] = size;
+            up(size++);
+            return true;
+        }
+        
+        private int pop() {
+            int node = heap[0];
+            closed[node] = stamp;
+            heap[0] = heap[--size];
+            position[heap[0]] = 0;
+            down(0);
+            return node;
+        }
+        
+        private void up(int i) {
+            int node = heap[i];
+            while (i > 0) {
+                int parentIndex = (i - 1) >> 1;
+                if (estimate[heap[parentIndex]] <= estimate[node]) break;
+                heap[i] = heap[parentIndex];
+                position[heap[i]] = i;
+                i = parentIndex;
+            }
+            heap[i] = node;
+            position[node] = i;
+        }
+        
+        private void down(int i) {
+            if (size == 0) return;
+            int node = heap[i];
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && estimate[heap[child + 1]] < estimate[heap[child]]) child++;
+                if (estimate[heap[child]] >= estimate[node]) break;
+                heap[i] = heap[child];
+                position[heap[i]] = i;
+                i = child;
+            }
+            heap[i] = node;
+            position[node] = i;
+        }
+    }
+}
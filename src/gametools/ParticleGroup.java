@@ -0,0 +1,401 @@
+package gametools;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.stream.IntStream;
+
+/**
+ * A group of lightweight particles such as smoke, sparks or debris. Instead of a sprite
+ * per particle, the position, velocity, angle, lifetime and age of every particle are stored
+ * in arrays of primitives and updated in a single loop, which lets a game handle far more
+ * particles than sprites. All particles share the same set of animation frames.
+ */
+public class ParticleGroup {
+    private static final int PARALLEL_THRESHOLD = 1 << 14, CHUNK = 1 << 12;
+    private final BufferedImage[] frames;
+    private final int speed;
+    private final double reach;
+    private double[] x, y, vx, vy, angle, spin;
+    private int[] life, age;
+    private int count;
+    private double accelerationX, accelerationY;
+    private boolean removeParticles, parallel, changed;
+    private Area moveableArea = Area.UNDEFINED_AREA;
+    private RandomSource random;
+    private final AffineTransform transform = new AffineTransform();
+    private final Runnable painting = this::paint;
+    private final Rectangle visible = new Rectangle();
+    
+    /**
+     * Creates an empty particle group that draws every particle with the same animation.
+     * @param animation The animation whose frames and speed the particles use.
+     * @param capacity The most particles that can be alive at once.
+     */
+    public ParticleGroup(Animation animation, int capacity) {
+        this(animation.getAllFrames(), animation.getSpeed(), capacity);
+    }
+    
+    /**
+     * Creates an empty particle group that draws every particle with the same image.
+     * @param image The image of the particles.
+     * @param capacity The most particles that can be alive at once.
+     */
+    public ParticleGroup(BufferedImage image, int capacity) {
+        this(new BufferedImage[] {image}, 1, capacity);
+    }
+    
+    /**
+     * Creates an empty particle group that draws every particle with the same frames.
+     * @param frames The frames the particles cycle through as they age.
+     * @param speed The amount of updates each frame is shown for.
+     * @param capacity The most particles that can be alive at once.
+     */
+    public ParticleGroup(BufferedImage[] frames, int speed, int capacity) {
+        this.frames = frames.clone();
+        this.speed = Math.max(speed, 1);
+        double farthest = 0;
+        for (BufferedImage frame : frames) farthest = Math.max(farthest, Math.hypot(frame.getWidth(), frame.getHeight()) / 2);
+        reach = farthest;
+        setCapacity(capacity);
+    }
+    
+    /**
+     * Returns the amount of particles currently alive.
+     * @return The size of the group.
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Returns the most particles that can be alive at once.
+     * @return The capacity of the group.
+     */
+    public int getCapacity() {
+        return x.length;
+    }
+    
+    /**
+     * Returns the x coordinate of the center of a particle.
+     * @param i The index of the particle.
+     * @return The x of the particle.
+     */
+    public double getX(int i) {
+        return x[check(i)];
+    }
+    
+    /**
+     * Returns the y coordinate of the center of a particle.
+     * @param i The index of the particle.
+     * @return The y of the particle.
+     */
+    public double getY(int i) {
+        return y[check(i)];
+    }
+    
+    /**
+     * Returns the amount of updates a particle has left before it is removed.
+     * @param i The index of the particle.
+     * @return The remaining lifetime of the particle.
+     */
+    public int getLife(int i) {
+        return life[check(i)];
+    }
+    
+    /**
+     * Returns the random source of the group, which is split from the random source
+     * of the current thread the first time it is needed.
+     * @return The random source of the group.
+     */
+    public RandomSource random() {
+        if (random == null) random = Tools.random().split();
+        return random;
+    }
+    
+    /**
+     * Returns whether or not the group is removing particles outside their boundaries.
+     * @return True if the group is removing particles.
+     */
+    public boolean removeParticles() {
+        return removeParticles;
+    }
+    
+    /**
+     * Adds a particle to the group.
+     * @param x The x of the center of the particle.
+     * @param y The y of the center of the particle.
+     * @param vx The amount the particle moves horizontally every update.
+     * @param vy The amount the particle moves vertically every update.
+     * @param life The amount of updates before the particle is removed.
+     * @return The index of the new particle or negative one if the group is full.
+     */
+    public int spawn(double x, double y, double vx, double vy, int life) {
+        return spawn(x, y, vx, vy, life, 0, 0);
+    }
+    
+    /**
+     * Adds a rotating particle to the group.
+     * @param x The x of the center of the particle.
+     * @param y The y of the center of the particle.
+     * @param vx The amount the particle moves horizontally every update.
+     * @param vy The amount the particle moves vertically every update.
+     * @param life The amount of updates before the particle is removed.
+     * @param angle The starting angle of the particle in radians.
+     * @param spin The amount the particle rotates every update in radians.
+     * @return The index of the new particle or negative one if the group is full.
+     */
+    public int spawn(double x, double y, double vx, double vy, int life, double angle, double spin) {
+        if (count == this.x.length || life <= 0) return -1;
+        int i = count++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+        this.angle[i] = angle;
+        this.spin[i] = spin;
+        this.life[i] = life;
+        age[i] = 0;
+        changed = true;
+        return i;
+    }
+    
+    /**
+     * Adds a burst of particles moving away from a point in random directions.
+     * @param amount The amount of particles to add.
+     * @param x The x of the point the particles start at.
+     * @param y The y of the point the particles start at.
+     * @param speed The most the particles move every update.
+     * @param life The most updates before a particle is removed.
+     * @return The amount of particles that were added before the group was full.
+     */
+    public int burst(int amount, double x, double y, double speed, int life) {
+        RandomSource source = random();
+        int added = 0;
+        for (; added < amount && count < this.x.length; added++) {
+            double ang = source.nextDouble() * Math.PI * 2, vel = source.nextDouble() * speed;
+            spawn(x, y, Math.cos(ang) * vel, Math.sin(ang) * vel, 1 + source.nextInt(Math.max(life, 1)));
+        }
+        return added;
+    }
+    
+    /**
+     * Removes a particle from the group, which moves the last particle into its index.
+     * @param i The index of the particle to remove.
+     */
+    public void remove(int i) {
+        check(i);
+        move(--count, i);
+        changed = true;
+    }
+    
+    /**
+     * Removes all particles from the group.
+     */
+    public void clear() {
+        count = 0;
+    }
+    
+    /**
+     * Sets the most particles that can be alive at once, removing any extra particles.<br>
+     * <b>Note</b>: This allocates new arrays and should not be called every frame.
+     * @param capacity The new capacity of the group.
+     */
+    public void setCapacity(int capacity) {
+        capacity = Math.max(capacity, 1);
+        x = resize(x, capacity);
+        y = resize(y, capacity);
+        vx = resize(vx, capacity);
+        vy = resize(vy, capacity);
+        angle = resize(angle, capacity);
+        spin = resize(spin, capacity);
+        life = resize(life, capacity);
+        age = resize(age, capacity);
+        count = Math.min(count, capacity);
+        changed = true;
+    }
+    
+    /**
+     * Sets an acceleration that is added to the velocity of every particle each update,
+     * for example to make sparks fall with gravity.
+     * @param hor The horizontal acceleration.
+     * @param ver The vertical acceleration (positive means downwards).
+     */
+    public void setAcceleration(double hor, double ver) {
+        accelerationX = hor;
+        accelerationY = ver;
+    }
+    
+    /**
+     * Sets whether large groups are updated on several threads at once.
+     * @param parallel True to update in parallel, false to update on the game thread only.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+    
+    /**
+     * Sets whether or not to remove particles from the group if they go outside their boundaries.
+     * @param remove Whether or not to remove particles from the group.
+     */
+    public void removeWhenOutsideBounds(boolean remove) {
+        removeParticles = remove;
+    }
+    
+    /**
+     * Defines the area the particles can move inside. If removing particles is turned on
+     * and the center of a particle goes outside this area the particle will be removed.
+     * @param area The area particles are allowed to move within.
+     */
+    public void setRemoveArea(Area area) {
+        moveableArea = area;
+        removeParticles = true;
+    }
+    
+    /**
+     * Removes all particles automatically as soon as they leave the screen.
+     */
+    public void removeWhenOffScreen() {
+        removeParticles = true;
+        moveableArea = new Area(Game.getArea());
+    }
+    
+    /**
+     * Sets a custom random source for the group.
+     * @param random The random source the group should use.
+     */
+    public void setRandom(RandomSource random) {
+        this.random = random;
+    }
+    
+    /**
+     * Moves, rotates and ages every particle, removing the ones whose lifetime ran out
+     * or that left the remove area.
+     */
+    public void update() {
+        boolean cull = removeParticles && moveableArea != Area.UNDEFINED_AREA;
+        double minX = moveableArea.x, minY = moveableArea.y;
+        double maxX = minX + moveableArea.width, maxY = minY + moveableArea.height;
+        if (parallel && count >= PARALLEL_THRESHOLD) {
+            int total = count;
+            IntStream.range(0, (total + CHUNK - 1) / CHUNK).parallel().forEach(chunk ->
+                    step(chunk * CHUNK, Math.min(total, (chunk + 1) * CHUNK), cull, minX, minY, maxX, maxY));
+        }
+        else step(0, count, cull, minX, minY, maxX, maxY);
+        changed |= count > 0;
+        int i = 0;
+        while (i < count) {
+            if (life[i] > 0) i++;
+            else move(--count, i);
+        }
+    }
+    
+    /**
+     * Draws every particle with the frame matching its age. With dirty rendering only the
+     * box around the particles is redrawn, and only when they changed or other objects
+     * made the screen dirty there.
+     */
+    public void draw() {
+        DirtyRegions dirty = Game.dirtyRegions();
+        if (dirty == null) paint();
+        else if (count > 0) {
+            AffineTransform camera = Game.painter().getTransform();
+            bound(camera);
+            dirty.submit(this, painting, camera, visible, changed);
+            changed = false;
+        }
+    }
+    
+    /**
+     * Updates and then draws every particle.
+     */
+    public void drawAll() {
+        long start = Profiler.start();
+        update();
+        start = Profiler.stop(Profiler.Section.UPDATE, start);
+        draw();
+        Profiler.stop(Profiler.Section.DRAW, start);
+    }
+    
+    private void paint() {
+        Graphics2D painter = Game.painter();
+        int length = frames.length;
+        for (int i = 0; i < count; i++) {
+            BufferedImage image = frames[length == 1? 0 : (age[i] / speed) % length];
+            double left = x[i] - image.getWidth() / 2.0, top = y[i] - image.getHeight() / 2.0;
+            if (angle[i] == 0) painter.drawImage(image, (int) Math.round(left), (int) Math.round(top), null);
+            else {
+                transform.setToRotation(angle[i], x[i], y[i]);
+                transform.translate(left, top);
+                painter.drawImage(image, transform, null);
+            }
+        }
+    }
+    
+    /**
+     * Sets the visible rectangle to the box on the screen that covers every particle.
+     */
+    private void bound(AffineTransform camera) {
+        double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            left = Math.min(left, x[i]);
+            right = Math.max(right, x[i]);
+            top = Math.min(top, y[i]);
+            bottom = Math.max(bottom, y[i]);
+        }
+        left -= reach;
+        top -= reach;
+        double width = right + reach - left, height = bottom + reach - top;
+        double scaleX = camera.getScaleX(), shearX = camera.getShearX(), shearY = camera.getShearY(), scaleY = camera.getScaleY();
+        double screenX = camera.getTranslateX() + scaleX * left + shearX * top, screenY = camera.getTranslateY() + shearY * left + scaleY * top;
+        double minX = screenX + Math.min(0, scaleX * width) + Math.min(0, shearX * height);
+        double maxX = screenX + Math.max(0, scaleX * width) + Math.max(0, shearX * height);
+        double minY = screenY + Math.min(0, shearY * width) + Math.min(0, scaleY * height);
+        double maxY = screenY + Math.max(0, shearY * width) + Math.max(0, scaleY * height);
+        int fromX = (int) Math.max(Math.floor(minX) - 1, 0), fromY = (int) Math.max(Math.floor(minY) - 1, 0);
+        int toX = (int) Math.min(Math.ceil(maxX) + 1, Game.getWidth()), toY = (int) Math.min(Math.ceil(maxY) + 1, Game.getHeight());
+        visible.setBounds(fromX, fromY, Math.max(toX - fromX, 0), Math.max(toY - fromY, 0));
+    }
+    
+    private void step(int from, int to, boolean cull, double minX, double minY, double maxX, double maxY) {
+        double ax = accelerationX, ay = accelerationY;
+        for (int i = from; i < to; i++) {
+            vx[i] += ax;
+            vy[i] += ay;
+            double px = x[i] += vx[i], py = y[i] += vy[i];
+            angle[i] += spin[i];
+            age[i]++;
+            if (--life[i] > 0 && cull && (px < minX || py < minY || px > maxX || py > maxY)) life[i] = 0;
+        }
+    }
+    
+    private void move(int from, int to) {
+        x[to] = x[from];
+        y[to] = y[from];
+        vx[to] = vx[from];
+        vy[to] = vy[from];
+        angle[to] = angle[from];
+        spin[to] = spin[from];
+        life[to] = life[from];
+        age[to] = age[from];
+    }
+    
+    private int check(int i) {
+        if (i < 0 || i >= count) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+        return i;
+    }
+    
+    private static double[] resize(double[] array, int capacity) {
+        double[] result = new double[capacity];
+        if (array != null) System.arraycopy(array, 0, result, 0, Math.min(array.length, capacity));
+        return result;
+    }
+    
+    private static int[] resize(int[] array, int capacity) {
+        int[] result = new int[capacity];
+        if (array != null) System.arraycopy(array, 0, result, 0, Math.min(array.length, capacity));
+        return result;
+    }
+}
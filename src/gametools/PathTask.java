@@ -0,0 +1,36 @@
+package gametools;
+
+import java.util.List;
+
+/**
+ * A task script that finds a path on a navigation grid in the background and hands it back
+ * on the game thread. Override the finish method to use the path, for example by attaching
+ * the task to the sprite that should follow it.
+ */
+public class PathTask extends TaskScript<List<Position>> {
+    private final NavGrid grid;
+    private final double startX, startY, goalX, goalY;
+    
+    /**
+     * Creates a task that finds the path between the two points once it is started.
+     * @param grid The grid to search.
+     * @param start The point the path starts from.
+     * @param goal The point the path leads to.
+     */
+    public PathTask(NavGrid grid, Position start, Position goal) {
+        this.grid = grid;
+        startX = start.x;
+        startY = start.y;
+        goalX = goal.x;
+        goalY = goal.y;
+    }
+    
+    /**
+     * Finds the path on the thread of the task.
+     * @return The path from the find path method of the grid.
+     */
+    @Override
+    protected List<Position> execute() {
+        return grid.findPath(startX, startY, goalX, goalY);
+    }
+}
@@ -0,0 +1,277 @@
+package gametools;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+
+/**
+ * Measures where the time of every frame goes. When the profiler is enabled the game loop
+ * times reading the input, drawing the background, the run method, the update and draw passes
+ * of every group and presenting the frame. The time of every section is added up over the frame
+ * and recorded in a histogram with logarithmic buckets, so recording costs a few array writes
+ * and allocates nothing. The numbers are read from the last completed window of one second,
+ * which can be done from any thread. The flight recorder events of the engine, which show the
+ * same frames next to the events of the JVM, are listed in the package documentation.<br>
+ * <b>Note</b>: The run section includes the groups that are updated and drawn inside it.
+ */
+public final class Profiler {
+    /**
+     * The parts of a frame that are timed.
+     */
+    public static enum Section {
+        /**
+         * The whole frame, not including the time spent waiting for the next frame.
+         */
+        FRAME,
+        /**
+         * Reading the input events that arrived since the last frame.
+         */
+        INPUT,
+        /**
+         * Drawing the background, or preparing the frame with dirty rendering.
+         */
+        BACKGROUND,
+        /**
+         * The run method of the game.
+         */
+        RUN,
+        /**
+         * Updating the sprites and particles of groups, added up over all groups.
+         */
+        UPDATE,
+        /**
+         * Drawing the sprites and particles of groups, added up over all groups.
+         */
+        DRAW,
+        /**
+         * Presenting the frame on the screen, including the dirty regions and the overlay.
+         */
+        PRESENT
+    }
+    private static final Section[] SECTIONS = Section.values();
+    private static final int SUB_BUCKETS = 8, BUCKETS = 40 * SUB_BUCKETS;
+    private static final long WINDOW = 1000000000;
+    private static final long[][] counts = new long[SECTIONS.length][BUCKETS];
+    private static final long[] frameTimes = new long[SECTIONS.length], max = new long[SECTIONS.length], total = new long[SECTIONS.length];
+    private static final Font font = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color text = new Color(120, 255, 120);
+    private static volatile boolean enabled;
+    private static volatile Window finished = new Window(0);
+    private static long windowStart, frames, profiled;
+    private static String[] lines = {"Profiling..."};
+    
+    private Profiler() {}
+    
+    /**
+     * Returns true if the sections of every frame are being timed.
+     * @return True if the profiler is enabled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * Turns timing the sections of every frame on or off. The frames per second
+     * are measured even while the profiler is off.
+     * @param enabled True to time every frame.
+     */
+    public static void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+    }
+    
+    /**
+     * Returns the amount of frames that were actually completed in the last second.
+     * @return The measured frames per second.
+     */
+    public static double getActualFPS() {
+        return finished.fps;
+    }
+    
+    /**
+     * Returns the time below which the passed in percentage of frames spent in the section
+     * during the last window, accurate to about six percent.
+     * @param section The section of the frame.
+     * @param percentile The percentage of frames from zero to one hundred.
+     * @return The time in milliseconds, or zero if no frames were timed.
+     */
+    public static double getPercentile(Section section, double percentile) {
+        Window window = finished;
+        long[] buckets = window.counts[section.ordinal()];
+        long rank = (long) Math.ceil(window.frames * Math.max(0, Math.min(percentile, 100)) / 100.0);
+        if (window.frames == 0) return 0;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= Math.max(rank, 1)) return Math.min(value(i), window.max[section.ordinal()]) / 1000000.0;
+        }
+        return window.max[section.ordinal()] / 1000000.0;
+    }
+    
+    /**
+     * Returns the time that half of the frames spent in the section during the last window.
+     * @param section The section of the frame.
+     * @return The median time in milliseconds.
+     */
+    public static double getMedian(Section section) {
+        return getPercentile(section, 50);
+    }
+    
+    /**
+     * Returns the longest time a frame spent in the section during the last window.
+     * @param section The section of the frame.
+     * @return The maximum time in milliseconds.
+     */
+    public static double getMax(Section section) {
+        return finished.max[section.ordinal()] / 1000000.0;
+    }
+    
+    /**
+     * Returns the average time frames spent in the section during the last window.
+     * @param section The section of the frame.
+     * @return The average time in milliseconds.
+     */
+    public static double getAverage(Section section) {
+        Window window = finished;
+        return window.frames == 0? 0 : window.total[section.ordinal()] / (window.frames * 1000000.0);
+    }
+    
+    /**
+     * Returns the amount of frames that were timed in the last window.
+     * @return The amount of timed frames.
+     */
+    public static long getFrameCount() {
+        return finished.frames;
+    }
+    
+    /**
+     * Discards all the recorded times.
+     */
+    public static void reset() {
+        for (int s = 0; s < SECTIONS.length; s++) Arrays.fill(counts[s], 0);
+        Arrays.fill(frameTimes, 0);
+        Arrays.fill(max, 0);
+        Arrays.fill(total, 0);
+        frames = 0;
+        profiled = 0;
+        finished = new Window(finished.fps);
+    }
+    
+    /**
+     * Draws the frame rate and the times of every section in the top left corner of the screen.
+     */
+    public static void drawOverlay() {
+        paint(Game.painter());
+    }
+    
+    /**
+     * Returns the current time if the profiler is enabled, or zero otherwise.
+     */
+    static long start() {
+        return enabled? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Adds the time since the start to the section and returns the current time
+     * so the next section can start from it.
+     */
+    static long stop(Section section, long start) {
+        if (start == 0) return 0;
+        long now = System.nanoTime();
+        frameTimes[section.ordinal()] += now - start;
+        return now;
+    }
+    
+    /**
+     * Records the times of the sections of the frame and measures the frame rate. A frame
+     * that was not timed from its start, or during which the profiler was turned off, is
+     * discarded along with the sections it timed.
+     */
+    static void endFrame(long start) {
+        long now = System.nanoTime();
+        if (windowStart == 0) windowStart = now;
+        if (start == 0 || !enabled) Arrays.fill(frameTimes, 0);
+        else {
+            profiled++;
+            frameTimes[Section.FRAME.ordinal()] = now - start;
+            for (int s = 0; s < SECTIONS.length; s++) {
+                long time = frameTimes[s];
+                counts[s][bucket(time)]++;
+                total[s] += time;
+                if (time > max[s]) max[s] = time;
+                frameTimes[s] = 0;
+            }
+        }
+        frames++;
+        if (now - windowStart >= WINDOW) {
+            finished = new Window(frames * 1e9 / (now - windowStart));
+            for (int s = 0; s < SECTIONS.length; s++) {
+                Arrays.fill(counts[s], 0);
+                max[s] = 0;
+                total[s] = 0;
+            }
+            frames = 0;
+            profiled = 0;
+            windowStart = now;
+            lines = null;
+        }
+    }
+    
+    /**
+     * Draws the overlay without any transform and returns the region it covers.
+     */
+    static Rectangle paint(Graphics2D painter) {
+        if (lines == null) {
+            lines = new String[SECTIONS.length + 1];
+            lines[0] = String.format("FPS %6.1f / %d", getActualFPS(), Game.getFPS());
+            for (Section section : SECTIONS)
+                lines[section.ordinal() + 1] = String.format("%-10s p50 %6.2f  p99 %6.2f  max %6.2f", section,
+                        getMedian(section), getPercentile(section, 99), getMax(section));
+        }
+        AffineTransform camera = painter.getTransform();
+        Color color = painter.getColor();
+        Font previous = painter.getFont();
+        painter.setTransform(new AffineTransform());
+        painter.setFont(font);
+        Rectangle area = new Rectangle(4, 4, 330, lines.length * 14 + 8);
+        painter.setColor(Color.BLACK);
+        painter.fill(area);
+        painter.setColor(text);
+        for (int i = 0; i < lines.length; i++) painter.drawString(lines[i], area.x + 6, area.y + 16 + i * 14);
+        painter.setFont(previous);
+        painter.setColor(color);
+        painter.setTransform(camera);
+        return area;
+    }
+    
+    private static int bucket(long time) {
+        if (time < SUB_BUCKETS) return (int) Math.max(time, 0);
+        int exponent = 63 - Long.numberOfLeadingZeros(time);
+        return Math.min((exponent - 2) * SUB_BUCKETS + (int) ((time >>> (exponent - 3)) & (SUB_BUCKETS - 1)), BUCKETS - 1);
+    }
+    
+    private static long value(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + 2;
+        long width = 1L << (exponent - 3);
+        return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width / 2;
+    }
+    
+    /**
+     * The times of a completed window, which are copied once when the window ends and
+     * never changed, so other threads always read all the numbers of the same window.
+     */
+    private static final class Window {
+        private final long[][] counts = new long[SECTIONS.length][];
+        private final long[] max = Profiler.max.clone(), total = Profiler.total.clone();
+        private final long frames = profiled;
+        private final double fps;
+        
+        private Window(double fps) {
+            this.fps = fps;
+            for (int s = 0; s < SECTIONS.length; s++) counts[s] = Profiler.counts[s].clone();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package gametools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fast, seedable source of random numbers. The default source is a xoroshiro128++
+ * generator, and a custom algorithm can be used by extending this class and implementing
+ * the next long and split methods.<br>
+ * <b>Note</b>: A single source should only be used by one thread at a time, use the split
+ * method or the tools class to get a separate source for every thread.
+ */
+public abstract class RandomSource {
+    private int generation;
+    
+    /**
+     * Creates a random source using the default algorithm.
+     * @param seed The seed the generated sequence starts from.
+     * @return A new random source that always produces the same sequence for the same seed.
+     */
+    public static RandomSource create(long seed) {
+        return new Xoroshiro(seed);
+    }
+    
+    /**
+     * Generates the next 64 random bits, all other methods are built on this one.
+     * @return A random long.
+     */
+    public abstract long nextLong();
+    
+    /**
+     * Creates a new independent source from this one that can be handed to another
+     * thread or object. Splitting in the same order always produces the same sources.
+     * @return A new random source.
+     */
+    public abstract RandomSource split();
+    
+    /**
+     * Generates a random integer from the full range of integers.
+     * @return A random integer.
+     */
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+    
+    /**
+     * Generates a random integer from zero up to the bound.
+     * @param bound The largest possible value (exclusive), must be positive.
+     * @return A random integer that is at least zero and less than the bound.
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) throw new IllegalArgumentException("bound must be positive");
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+    
+    /**
+     * Generates a random double from zero up to one.
+     * @return A random double that is at least zero and less than one.
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+    
+    /**
+     * Generates a random double within the passed in range.
+     * @param min The smallest possible value (inclusive).
+     * @param max The largest possible value (exclusive).
+     * @return A random double within the range.
+     */
+    public double nextDouble(double min, double max) {
+        return min + nextDouble() * (max - min);
+    }
+    
+    /**
+     * Generates a random boolean.
+     * @return True or false with an equal chance.
+     */
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+    
+    /**
+     * Generates a random x coordinate within the passed in area without creating a position.
+     * @param area The area within which the coordinate will be.
+     * @return A random whole number x coordinate inside the area.
+     */
+    public double nextX(Area area) {
+        return nextInt(area.width) + area.x;
+    }
+    
+    /**
+     * Generates a random y coordinate within the passed in area without creating a position.
+     * @param area The area within which the coordinate will be.
+     * @return A random whole number y coordinate inside the area.
+     */
+    public double nextY(Area area) {
+        return nextInt(area.height) + area.y;
+    }
+    
+    /**
+     * Fills an array with random doubles within the passed in range.
+     * @param values The array to fill.
+     * @param min The smallest possible value (inclusive).
+     * @param max The largest possible value (exclusive).
+     */
+    public void fill(double[] values, double min, double max) {
+        double range = max - min;
+        for (int i = 0; i < values.length; i++) values[i] = min + ((nextLong() >>> 11) * 0x1.0p-53) * range;
+    }
+    
+    /**
+     * Fills an array with random coordinates within the passed in area, stored in pairs
+     * of an x followed by a y. Useful for spawning many particles at once.
+     * @param coordinates The array to fill, which should have an even length.
+     * @param area The area within which the coordinates will be.
+     */
+    public void fillPositions(double[] coordinates, Area area) {
+        for (int i = 0; i + 1 < coordinates.length; i += 2) {
+            coordinates[i] = area.x + ((nextLong() >>> 11) * 0x1.0p-53) * area.width;
+            coordinates[i + 1] = area.y + ((nextLong() >>> 11) * 0x1.0p-53) * area.height;
+        }
+    }
+    
+    /**
+     * Generates a random position within the passed in area.
+     * @param area The area within which the random position will be.
+     * @return A random position with whole number coordinates inside the area.
+     */
+    public Position nextPosition(Area area) {
+        return new Position(nextX(area), nextY(area));
+    }
+    
+    /**
+     * Writes the internal state of the source so it can be restored later.
+     * @return False if the source does not support saving its state.
+     */
+    boolean save(ByteBuffer buffer) {
+        return false;
+    }
+    
+    void load(ByteBuffer buffer) {}
+    
+    /**
+     * Returns the generation of the tools random source this source was split from.
+     */
+    int getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Marks the source as split from the passed in generation of the tools random source.
+     */
+    void setGeneration(int generation) {
+        this.generation = generation;
+    }
+    
+    private static final class Xoroshiro extends RandomSource {
+        private long first, second;
+        
+        private Xoroshiro(long seed) {
+            first = mix(seed += 0x9E3779B97F4A7C15L);
+            second = mix(seed + 0x9E3779B97F4A7C15L);
+            if ((first | second) == 0) second = 1;
+        }
+        
+        @Override
+        public long nextLong() {
+            long s0 = first, s1 = second;
+            long result = Long.rotateLeft(s0 + s1, 17) + s0;
+            s1 ^= s0;
+            first = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+            second = Long.rotateLeft(s1, 28);
+            return result;
+        }
+        
+        @Override
+        public RandomSource split() {
+            return new Xoroshiro(nextLong());
+        }
+        
+        @Override
+        boolean save(ByteBuffer buffer) {
+            buffer.putLong(first).putLong(second);
+            return true;
+        }
+        
+        @Override
+        void load(ByteBuffer buffer) {
+            first = buffer.getLong();
+            second = buffer.getLong();
+        }
+        
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package gametools;
+
+/**
+ * The first sprite hit by a ray cast through a group, along with where it was hit.
+ */
+public final class RayHit {
+    private final Sprite sprite;
+    private final double distance, x, y;
+    
+    RayHit(Sprite sprite, double distance, double x, double y) {
+        this.sprite = sprite;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+    }
+    
+    /**
+     * Returns the sprite that was hit.
+     * @return The first sprite along the ray.
+     */
+    public Sprite getSprite() {
+        return sprite;
+    }
+    
+    /**
+     * Returns how far along the ray the sprite was hit.
+     * @return The distance from the origin of the ray to the edge of the sprite.
+     */
+    public double getDistance() {
+        return distance;
+    }
+    
+    /**
+     * Returns the x coordinate of the point where the ray hit the sprite.
+     * @return The x of the hit point.
+     */
+    public double getX() {
+        return x;
+    }
+    
+    /**
+     * Returns the y coordinate of the point where the ray hit the sprite.
+     * @return The y of the hit point.
+     */
+    public double getY() {
+        return y;
+    }
+    
+    /**
+     * Returns the point where the ray hit the sprite.
+     * @return A new position at the hit point.
+     */
+    public Position getPosition() {
+        return new Position(x, y);
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getName() + "[sprite=" + sprite + ", distance=" + distance + ", x=" + x + ", y=" + y + "]";
+    }
+    
+    /**
+     * Returns the distance along the ray to the box of the object using the slab method, or
+     * a negative number if the ray misses it, hits it further than the limit or starts inside it.
+     */
+    static double distance(Area obj, double x, double y, double inverseX, double inverseY, double limit) {
+        double first = (obj.x - x) * inverseX, second = (obj.x + obj.width - x) * inverseX;
+        double near = Math.min(first, second), far = Math.max(first, second);
+        first = (obj.y - y) * inverseY;
+        second = (obj.y + obj.height - y) * inverseY;
+        near = Math.max(near, Math.min(first, second));
+        far = Math.min(far, Math.max(first, second));
+        if (!(near <= far) || near < 0 || near > limit) return -1;
+        return near;
+    }
+}
@@ -0,0 +1,193 @@
+package gametools;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emits the flight recorder events of the engine, so frame hitches can be lined up with garbage
+ * collection pauses and other JVM events in tools such as JDK Mission Control. The events are
+ * defined when the class loads with the event factory of the flight recorder, which is found
+ * through reflection the same way task scripts find virtual threads, so the engine still builds
+ * for Java 8 and every method does nothing on runtimes without the flight recorder. Every begin
+ * method returns null when the event is not enabled, and the matching end method ignores null,
+ * so the events cost a single check while nothing is recording. The events and their fields
+ * are listed in the package documentation, which should be kept in sync with the types below.
+ */
+final class Recorder {
+    private static final MethodHandle BEGIN, END, SHOULD_COMMIT, COMMIT, SET;
+    private static final Type FRAME, RUN, ASSET_LOAD, COLLISION_QUERY;
+    
+    static {
+        MethodHandle begin = null, end = null, shouldCommit = null, commit = null, set = null;
+        Type frame = null, run = null, assetLoad = null, collisionQuery = null;
+        try {
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodType action = MethodType.methodType(void.class, Object.class);
+            begin = lookup.findVirtual(event, "begin", MethodType.methodType(void.class)).asType(action);
+            end = lookup.findVirtual(event, "end", MethodType.methodType(void.class)).asType(action);
+            commit = lookup.findVirtual(event, "commit", MethodType.methodType(void.class)).asType(action);
+            shouldCommit = lookup.findVirtual(event, "shouldCommit", MethodType.methodType(boolean.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class));
+            set = lookup.findVirtual(event, "set", MethodType.methodType(void.class, int.class, Object.class))
+                    .asType(MethodType.methodType(void.class, Object.class, int.class, Object.class));
+            frame = new Type("gametools.Frame", "Frame", "A frame of the game loop, from reading the input until the frame is presented",
+                    null, false, long.class, "tick", "Tick", int.class, "targetFps", "Target FPS");
+            run = new Type("gametools.Run", "Long Run", "A call to the run method of the game that took longer than the threshold",
+                    "8 ms", false, long.class, "tick", "Tick");
+            assetLoad = new Type("gametools.AssetLoad", "Slow Asset Load", "Loading an image or sound that took longer than the threshold",
+                    "5 ms", true, String.class, "path", "Path", String.class, "type", "Type", boolean.class, "loaded", "Loaded");
+            collisionQuery = new Type("gametools.CollisionQuery", "Slow Collision Query",
+                    "A collision query between a group and a list of sprites that took longer than the threshold",
+                    "1 ms", false, int.class, "sprites", "Sprites", int.class, "targets", "Targets", int.class, "hits", "Hits");
+        }
+        catch (ReflectiveOperationException | LinkageError | SecurityException | ClassCastException ex) {
+            frame = run = assetLoad = collisionQuery = null;
+        }
+        BEGIN = begin;
+        END = end;
+        SHOULD_COMMIT = shouldCommit;
+        COMMIT = commit;
+        SET = set;
+        FRAME = frame;
+        RUN = run;
+        ASSET_LOAD = assetLoad;
+        COLLISION_QUERY = collisionQuery;
+    }
+    
+    private Recorder() {}
+    
+    static Object beginFrame() {
+        return FRAME == null? null : FRAME.begin();
+    }
+    
+    static void endFrame(Object event, long tick, int targetFps) {
+        if (event == null || !finish(event)) return;
+        set(event, 0, tick);
+        set(event, 1, targetFps);
+        commit(event);
+    }
+    
+    static Object beginRun() {
+        return RUN == null? null : RUN.begin();
+    }
+    
+    static void endRun(Object event, long tick) {
+        if (event == null || !finish(event)) return;
+        set(event, 0, tick);
+        commit(event);
+    }
+    
+    static Object beginAssetLoad() {
+        return ASSET_LOAD == null? null : ASSET_LOAD.begin();
+    }
+    
+    static void endAssetLoad(Object event, String path, String type, boolean loaded) {
+        if (event == null || !finish(event)) return;
+        set(event, 0, path);
+        set(event, 1, type);
+        set(event, 2, loaded);
+        commit(event);
+    }
+    
+    static Object beginCollisionQuery() {
+        return COLLISION_QUERY == null? null : COLLISION_QUERY.begin();
+    }
+    
+    static void endCollisionQuery(Object event, int sprites, int targets, int hits) {
+        if (event == null || !finish(event)) return;
+        set(event, 0, sprites);
+        set(event, 1, targets);
+        set(event, 2, hits);
+        commit(event);
+    }
+    
+    /**
+     * Ends the event and returns true if it is enabled and took longer than its threshold.
+     */
+    private static boolean finish(Object event) {
+        try {
+            END.invokeExact(event);
+            return (boolean) SHOULD_COMMIT.invokeExact(event);
+        }
+        catch (Throwable ex) {
+            return false;
+        }
+    }
+    
+    private static void set(Object event, int index, Object value) {
+        try {
+            SET.invokeExact(event, index, value);
+        }
+        catch (Throwable ex) {}
+    }
+    
+    private static void commit(Object event) {
+        try {
+            COMMIT.invokeExact(event);
+        }
+        catch (Throwable ex) {}
+    }
+    
+    /**
+     * An event type created with the event factory, which stays registered with the flight
+     * recorder while the factory is reachable.
+     */
+    private static final class Type {
+        private final Object factory;
+        private final MethodHandle enabled, create;
+        
+        /**
+         * Creates the event type from its settings followed by the type, name and label of every field.
+         */
+        Type(String name, String label, String description, String threshold, boolean stackTrace, Object... fields)
+                throws ReflectiveOperationException {
+            List<Object> annotations = new ArrayList<>();
+            annotations.add(annotation("Name", name));
+            annotations.add(annotation("Label", label));
+            annotations.add(annotation("Category", new String[] {"GameTools"}));
+            annotations.add(annotation("Description", description));
+            annotations.add(annotation("StackTrace", stackTrace));
+            if (threshold != null) annotations.add(annotation("Threshold", threshold));
+            Constructor<?> value = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            List<Object> values = new ArrayList<>();
+            for (int i = 0; i < fields.length; i += 3)
+                values.add(value.newInstance(fields[i], fields[i + 1], Collections.singletonList(annotation("Label", fields[i + 2]))));
+            Class<?> type = Class.forName("jdk.jfr.EventFactory");
+            Method create = type.getMethod("create", List.class, List.class);
+            factory = create.invoke(null, annotations, values);
+            Object eventType = type.getMethod("getEventType").invoke(factory);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            enabled = lookup.findVirtual(eventType.getClass(), "isEnabled", MethodType.methodType(boolean.class)).bindTo(eventType);
+            this.create = lookup.findVirtual(type, "newEvent", MethodType.methodType(Class.forName("jdk.jfr.Event")))
+                    .bindTo(factory).asType(MethodType.methodType(Object.class));
+        }
+        
+        /**
+         * Creates and begins an event, or returns null if no recording has the event enabled.
+         */
+        Object begin() {
+            try {
+                if (!(boolean) enabled.invokeExact()) return null;
+                Object event = create.invokeExact();
+                BEGIN.invokeExact(event);
+                return event;
+            }
+            catch (Throwable ex) {
+                return null;
+            }
+        }
+        
+        private static Object annotation(String type, Object value) throws ReflectiveOperationException {
+            Class<? extends Annotation> annotation = Class.forName("jdk.jfr." + type).asSubclass(Annotation.class);
+            return Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class).newInstance(annotation, value);
+        }
+    }
+}
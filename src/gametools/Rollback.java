@@ -0,0 +1,260 @@
+package gametools;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Abstract class for running an online game between two players with rollback, where the
+ * game never waits for the input of the other player. Every tick the local input is sent to
+ * the other player and the game continues with a prediction of the remote input, which is
+ * simply the last remote input that arrived. When the real input arrives and differs from
+ * the prediction, the game is restored to the tick before the wrong prediction and quickly
+ * simulated again up to the current tick, all within one frame.<br>
+ * The state of the groups is kept in a ring of snapshots that are captured into the same
+ * memory every tick, so rolling back allocates nothing once the ring is filled. The update
+ * method should be called once every frame from the run method of the game, and the game
+ * should draw its groups afterwards, for example:
+ * <pre>
+ * protected void run() {
+ *     rollback.update();
+ *     players.drawAll(Graphic.UpdateType.DRAW_ONLY);
+ * }
+ * </pre>
+ * <b>Note</b>: The simulate method is called several times for the same tick during a
+ * rollback, so it should only update the game without drawing or playing sounds, and
+ * it should only depend on the inputs, the groups, the random sources of the groups and the
+ * random source of the thread that calls the update method, which are all rolled back.
+ */
+public abstract class Rollback {
+    private static final int MAGIC = 0x4754524B, INPUTS = 256, MAX_SENT = 64;
+    private final Transport transport;
+    private final int player, maxRollback;
+    private final Group[] groups;
+    private final Snapshot[] snapshots;
+    private final long[] localInputs = new long[INPUTS], remoteInputs = new long[INPUTS],
+            remoteTicks = new long[INPUTS], predicted = new long[INPUTS], inputs = new long[2];
+    private final ByteBuffer packet = ByteBuffer.allocate(4 + 8 + 8 + 2 + MAX_SENT * 8);
+    private long tick, confirmed = -1, acknowledged = -1, lastLocal = -1, mispredicted = Long.MAX_VALUE;
+    private long rollbacks, resimulationTime;
+    private int inputDelay = 2, lastRollback;
+    private boolean stalled, resimulating;
+    
+    /**
+     * Creates a rollback session that can roll back up to eight ticks.
+     * @param transport The connection to the other player.
+     * @param player The number of the local player, either zero or one. The
+     * other player should use the other number.
+     * @param groups The groups that make up the state of the game.
+     */
+    public Rollback(Transport transport, int player, Group... groups) {
+        this(transport, player, 8, groups);
+    }
+    
+    /**
+     * Creates a rollback session.
+     * @param transport The connection to the other player.
+     * @param player The number of the local player, either zero or one. The
+     * other player should use the other number.
+     * @param maxRollback The most ticks the game can run ahead of the last confirmed remote
+     * input before it waits for the other player.
+     * @param groups The groups that make up the state of the game.
+     */
+    public Rollback(Transport transport, int player, int maxRollback, Group... groups) {
+        if (player != 0 && player != 1) throw new IllegalArgumentException("The player must be zero or one");
+        this.transport = transport;
+        this.player = player;
+        this.maxRollback = Math.max(1, Math.min(maxRollback, 64));
+        this.groups = groups.clone();
+        snapshots = new Snapshot[this.maxRollback + 1];
+        snapshots[0] = Snapshot.capture(this.groups);
+        for (int i = 1; i < snapshots.length; i++) snapshots[i] = snapshots[0].captureNext(this.groups);
+        Arrays.fill(remoteTicks, -1);
+    }
+    
+    /**
+     * Returns the input of the local player for the current tick, such as a set of
+     * bits for the pressed keys. The input is applied after the input delay.
+     * @return The local input.
+     */
+    protected abstract long sampleInput();
+    
+    /**
+     * Advances the game by one tick with the inputs of both players, without drawing.
+     * @param inputs The inputs of both players, indexed by player number.
+     */
+    protected abstract void simulate(long[] inputs);
+    
+    /**
+     * Receives the inputs of the other player, rolls back and simulates again if a prediction
+     * was wrong, and then simulates the next tick with the local input, unless the game is too
+     * far ahead of the other player. The local input is then sent to the other player.
+     * @return True if a new tick was simulated, false if the game is waiting for the other player.
+     */
+    public boolean update() {
+        receive();
+        if (mispredicted < tick) rollback();
+        stalled = tick - confirmed > maxRollback;
+        if (!stalled) {
+            while (lastLocal < tick + inputDelay - 1) localInputs[slot(++lastLocal)] = 0;
+            localInputs[slot(++lastLocal)] = sampleInput();
+            snapshots[(int) (tick % snapshots.length)].recapture(groups);
+            step(tick++);
+        }
+        send();
+        return !stalled;
+    }
+    
+    /**
+     * Returns the next tick the session will simulate.
+     * @return The amount of simulated ticks.
+     */
+    public long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Returns the last tick for which the input of the other player arrived along
+     * with the inputs of all ticks before it.
+     * @return The last confirmed tick or negative one if no input arrived yet.
+     */
+    public long getConfirmedTick() {
+        return confirmed;
+    }
+    
+    /**
+     * Returns the number of the local player.
+     * @return Zero or one.
+     */
+    public int getPlayer() {
+        return player;
+    }
+    
+    /**
+     * Returns the most ticks that can be rolled back.
+     * @return The largest rollback in ticks.
+     */
+    public int getMaxRollback() {
+        return maxRollback;
+    }
+    
+    /**
+     * Returns the amount of ticks the local input is delayed before it is applied.
+     * @return The input delay in ticks.
+     */
+    public int getInputDelay() {
+        return inputDelay;
+    }
+    
+    /**
+     * Returns the amount of times the game was rolled back.
+     * @return The amount of rollbacks.
+     */
+    public long getRollbacks() {
+        return rollbacks;
+    }
+    
+    /**
+     * Returns the amount of ticks simulated again in the last rollback.
+     * @return The length of the last rollback in ticks.
+     */
+    public int getLastRollbackLength() {
+        return lastRollback;
+    }
+    
+    /**
+     * Returns how long the last rollback took, including restoring the snapshot.
+     * @return The time of the last rollback in milliseconds.
+     */
+    public double getLastRollbackTime() {
+        return resimulationTime / 1000000.0;
+    }
+    
+    /**
+     * Returns true if the last update did not simulate a tick because the game was too
+     * far ahead of the other player.
+     * @return True if the game is waiting for the other player.
+     */
+    public boolean isStalled() {
+        return stalled;
+    }
+    
+    /**
+     * Returns true while earlier ticks are being simulated again, which can be used to
+     * skip effects that should only happen once.
+     * @return True if the game is rolling back.
+     */
+    public boolean isResimulating() {
+        return resimulating;
+    }
+    
+    /**
+     * Sets the amount of ticks the local input is delayed before it is applied. A small delay
+     * gives the input time to reach the other player, which makes rollbacks shorter and rarer.
+     * The default is two.
+     * @param ticks The input delay in ticks.
+     */
+    public void setInputDelay(int ticks) {
+        inputDelay = Math.max(0, Math.min(ticks, 32));
+    }
+    
+    private void step(long tick) {
+        int slot = slot(tick);
+        long remote;
+        if (remoteTicks[slot] == tick) remote = remoteInputs[slot];
+        else remote = confirmed < 0? 0 : remoteInputs[slot(confirmed)];
+        predicted[slot] = remote;
+        inputs[player] = localInputs[slot];
+        inputs[1 - player] = remote;
+        simulate(inputs);
+    }
+    
+    private void rollback() {
+        long time = System.nanoTime(), start = mispredicted, now = Game.getTick();
+        mispredicted = Long.MAX_VALUE;
+        resimulating = true;
+        Snapshot snapshot = snapshots[(int) (start % snapshots.length)];
+        snapshot.restore(groups);
+        for (long t = start; t < tick; t++) {
+            if (t > start) snapshots[(int) (t % snapshots.length)].recapture(groups);
+            step(t);
+            Game.setTick(Game.getTick() + 1);
+        }
+        Game.setTick(now);
+        resimulating = false;
+        rollbacks++;
+        lastRollback = (int) (tick - start);
+        resimulationTime = System.nanoTime() - time;
+    }
+    
+    private void receive() {
+        for (byte[] bytes = transport.receive(); bytes != null; bytes = transport.receive()) {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (bytes.length < 22 || in.getInt() != MAGIC) continue;
+            acknowledged = Math.max(acknowledged, in.getLong());
+            long first = in.getLong();
+            int count = Math.min(in.getShort(), in.remaining() / 8);
+            for (int i = 0; i < count; i++) {
+                long tick = first + i, input = in.getLong();
+                int slot = slot(tick);
+                if (tick <= confirmed || tick >= confirmed + INPUTS || remoteTicks[slot] == tick) continue;
+                remoteTicks[slot] = tick;
+                remoteInputs[slot] = input;
+                if (tick < this.tick && predicted[slot] != input) mispredicted = Math.min(mispredicted, tick);
+            }
+            while (remoteTicks[slot(confirmed + 1)] == confirmed + 1) confirmed++;
+        }
+    }
+    
+    private void send() {
+        long first = Math.max(acknowledged + 1, lastLocal - MAX_SENT + 1);
+        int count = (int) Math.max(0, lastLocal - first + 1);
+        packet.clear();
+        packet.putInt(MAGIC).putLong(confirmed).putLong(first).putShort((short) count);
+        for (long t = first; t <= lastLocal; t++) packet.putLong(localInputs[slot(t)]);
+        transport.send(Arrays.copyOf(packet.array(), packet.position()));
+    }
+    
+    private static int slot(long tick) {
+        return (int) (tick & (INPUTS - 1));
+    }
+}
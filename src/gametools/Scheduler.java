@@ -0,0 +1,135 @@
+package gametools;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+/**
+ * Runs scripts that are not attached to a sprite, such as AI or spawning logic, at their
+ * own intervals. Sleeping scripts are kept ordered by the frame they wake up on so they cost
+ * nothing until then, and a time budget can be set to spread expensive scripts across
+ * several frames instead of running all of them at once.<br>
+ * <b>Note</b>: The update method should be called once every frame from the run method of the game.
+ */
+public final class Scheduler {
+    private final PriorityQueue<Script> sleeping = new PriorityQueue<>(16, (first, second) -> {
+        int result = Long.compare(first.getWake(), second.getWake());
+        return result != 0? result : Long.compare(first.order, second.order);
+    });
+    private final ArrayDeque<Script> ready = new ArrayDeque<>();
+    private Script current;
+    private long budget, order;
+    private int updated;
+    
+    /**
+     * Creates an empty scheduler without a time budget.
+     */
+    public Scheduler() {}
+    
+    /**
+     * Creates an empty scheduler with a time budget.
+     * @param millis The most time in milliseconds to spend updating scripts every frame.
+     */
+    public Scheduler(double millis) {
+        setBudget(millis);
+    }
+    
+    /**
+     * Adds a script to the scheduler, which will be updated starting on the next call
+     * to update unless it is sleeping.<br>
+     * <b>Note</b>: A script can only be in one scheduler at a time and is not updated
+     * by sprites while it is in a scheduler.
+     * @param script The script to add.
+     */
+    public void add(Script script) {
+        if (script == Script.UNDEFINED_SCRIPT || script.scheduler == this) return;
+        if (script.scheduler != null) script.scheduler.remove(script);
+        script.scheduler = this;
+        script.order = order++;
+        sleeping.add(script);
+    }
+    
+    /**
+     * Removes a script from the scheduler.
+     * @param script The script to remove.
+     */
+    public void remove(Script script) {
+        if (script.scheduler != this) return;
+        script.scheduler = null;
+        if (script != current && !sleeping.remove(script)) ready.remove(script);
+    }
+    
+    /**
+     * Removes all scripts from the scheduler.
+     */
+    public void clear() {
+        for (Script script : sleeping) script.scheduler = null;
+        for (Script script : ready) script.scheduler = null;
+        if (current != null) current.scheduler = null;
+        sleeping.clear();
+        ready.clear();
+    }
+    
+    /**
+     * Updates every script that is due on the current frame. Scripts that did not fit
+     * into the time budget are updated first on the next frame.
+     */
+    public void update() {
+        long tick = Game.getTick();
+        while (!sleeping.isEmpty() && sleeping.peek().getWake() <= tick) ready.add(sleeping.poll());
+        long start = budget > 0? System.nanoTime() : 0;
+        updated = 0;
+        while (!ready.isEmpty()) {
+            current = ready.poll();
+            current.tick(tick);
+            updated++;
+            if (current.scheduler == this) sleeping.add(current);
+            current = null;
+            if (budget > 0 && System.nanoTime() - start >= budget) break;
+        }
+    }
+    
+    /**
+     * Returns the most time the scheduler spends updating scripts every frame.
+     * @return The time budget in milliseconds or zero if there is no budget.
+     */
+    public double getBudget() {
+        return budget / 1e6;
+    }
+    
+    /**
+     * Sets the most time the scheduler spends updating scripts every frame. At least one
+     * script is always updated, so a slow script can go over the budget but never stall.
+     * @param millis The time budget in milliseconds or zero to update all due scripts.
+     */
+    public void setBudget(double millis) {
+        budget = (long) Math.max(millis * 1e6, 0);
+    }
+    
+    /**
+     * Returns the amount of scripts in the scheduler.
+     * @return The amount of sleeping and due scripts.
+     */
+    public int size() {
+        return sleeping.size() + ready.size() + (current != null? 1 : 0);
+    }
+    
+    /**
+     * Returns the amount of scripts that were due but did not fit into the time budget.
+     * @return The amount of scripts waiting to be updated on the next frame.
+     */
+    public int getDeferred() {
+        return ready.size();
+    }
+    
+    /**
+     * Returns the amount of scripts that were updated in the last call to update.
+     * @return The amount of scripts updated on the last frame.
+     */
+    public int getUpdated() {
+        return updated;
+    }
+    
+    void reschedule(Script script) {
+        if (script != current && sleeping.remove(script)) sleeping.add(script);
+    }
+}
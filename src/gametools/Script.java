@@ -1,7 +1,10 @@
 package gametools;
 
 /**
- * Abstract class for adding custom script code to sprites.
+ * Abstract class for adding custom script code to sprites. By default a script is updated
+ * every frame, but it can be set to run at an interval or put to sleep for a while so it only
+ * pays for the frames it actually needs. Scripts can also be run without a sprite by adding
+ * them to a scheduler.
  */
 public abstract class Script {
     /**
@@ -11,10 +14,84 @@ public abstract class Script {
         @Override
         public void update() {}
     };
+    private int interval = 1;
+    private long wake, ran = -1;
+    Scheduler scheduler;
+    long order;
     
     /**
      * Method that runs right after the sprites own update method but before
      * the sprite is drawn.
      */
     public abstract void update();
+    
+    /**
+     * Returns the amount of frames between two updates of the script.
+     * @return The interval of the script in frames.
+     */
+    public int getInterval() {
+        return interval;
+    }
+    
+    /**
+     * Sets the amount of frames between two updates of the script, for example an
+     * interval of ten makes the script think once every ten frames.
+     * @param frames The interval of the script in frames, one to update every frame.
+     */
+    public void setInterval(int frames) {
+        interval = Math.max(frames, 1);
+    }
+    
+    /**
+     * Stops updating the script for the passed in amount of frames, after which it will
+     * continue at its normal interval. Calling this from the update method replaces the
+     * interval for that one update.
+     * @param frames The amount of frames to wait before the next update.
+     */
+    public void sleep(int frames) {
+        wake = Game.getTick() + Math.max(frames, 1);
+        if (scheduler != null) scheduler.reschedule(this);
+    }
+    
+    /**
+     * Stops updating the script for the passed in amount of seconds, measured in
+     * frames at the current frames per second of the game.
+     * @param seconds The amount of seconds to wait before the next update.
+     */
+    public void sleepSeconds(double seconds) {
+        sleep((int) Math.ceil(seconds * Game.getFPS()));
+    }
+    
+    /**
+     * Wakes up a sleeping script so it updates on the current or next frame.
+     */
+    public void wake() {
+        wake = Game.getTick();
+        if (scheduler != null) scheduler.reschedule(this);
+    }
+    
+    /**
+     * Returns true if the script is waiting for an interval or sleep to pass.
+     * @return True if the script will not be updated on the current frame.
+     */
+    public boolean isSleeping() {
+        return wake > Game.getTick() && ran != Game.getTick();
+    }
+    
+    long getWake() {
+        return wake;
+    }
+    
+    /**
+     * Updates the script if it is due on the passed in frame. A script shared by
+     * several sprites is updated for all of them on the frame it is due.
+     */
+    final void tick(long tick) {
+        if (tick != ran) {
+            if (wake > tick) return;
+            ran = tick;
+            wake = tick + interval;
+        }
+        update();
+    }
 }
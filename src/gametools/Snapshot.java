@@ -0,0 +1,723 @@
+package gametools;
+
+import java.awt.image.BufferedImage;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A compact binary copy of the state of the game that can be restored later, such as
+ * for saving, rewinding or sending the game over a network. A snapshot stores the
+ * current tick, the state of the random source of the current thread and of every group,
+ * which sprites every group contains, and for every sprite its position, size, angle,
+ * velocity, animation playhead and any state added by subclasses such as the velocity of
+ * a mass. Images are stored as the path they were loaded from and the size they were
+ * scaled to instead of pixel data.<br>
+ * Snapshots belong to a stream, which gives every sprite the same number in all of its
+ * snapshots and stores every class name and image path once. The capture method starts
+ * a new stream, the capture next and recapture methods continue one, and a snapshot read
+ * from bytes starts its own. A delta snapshot only stores the sprites that changed since
+ * an earlier snapshot of the same stream, which makes it much smaller when most of the game
+ * stands still. A snapshot can also be captured again into the same memory, which allocates
+ * nothing once it is big enough.<br>
+ * <b>Note</b>: Scripts are not stored, and sprites can only be recreated from bytes if
+ * their class has a constructor without parameters and their images were loaded with
+ * the load image or load sprite sheet methods. Random sources that were split off and
+ * handed to other objects or threads are not stored either.
+ */
+public final class Snapshot {
+    private static final int MAGIC = 0x47545353, VERSION = 4, DELTA = 1;
+    private final Stream stream;
+    private long tick;
+    private boolean delta;
+    private byte[] random = new byte[64];
+    private ByteBuffer randomState = ByteBuffer.wrap(random);
+    private RandomSource[] sources = new RandomSource[0];
+    private int randomLength;
+    private int[] members = new int[16], groupEnds = new int[0];
+    private boolean[] unchanged;
+    private byte[] data = new byte[1024];
+    private ByteBuffer buffer = ByteBuffer.wrap(data);
+    private int[] ids = new int[16], offsets = new int[17], table;
+    private Sprite[] objects = new Sprite[16];
+    private Class<?> lastClass;
+    private int lastName;
+    private Animation[] animations = new Animation[16];
+    private int count;
+    private boolean indexed;
+    
+    private Snapshot(Stream stream) {
+        this.stream = stream;
+    }
+    
+    /**
+     * Captures the current state of the game and of every sprite in the groups, starting
+     * a new stream. Sprites that are in several groups are only stored once.
+     * @param groups The groups to capture.
+     * @return A new snapshot of the game.
+     */
+    public static Snapshot capture(Group... groups) {
+        Snapshot snapshot = new Snapshot(new Stream());
+        snapshot.recapture(groups);
+        return snapshot;
+    }
+    
+    /**
+     * Reads a snapshot from bytes created with the to bytes method.
+     * @param bytes The bytes of the snapshot.
+     * @return The snapshot or null if the bytes are not a valid snapshot.
+     */
+    public static Snapshot fromBytes(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            if (buffer.getInt() != MAGIC) {
+                System.err.println("The bytes are not a valid snapshot");
+                return null;
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                System.err.println("The snapshot has version " + version + " but only version " + VERSION + " can be read");
+                return null;
+            }
+            Snapshot snapshot = new Snapshot(new Stream());
+            Stream stream = snapshot.stream;
+            snapshot.delta = (buffer.getInt() & DELTA) != 0;
+            snapshot.tick = buffer.getLong();
+            snapshot.randomLength = buffer.getInt();
+            snapshot.reserveRandom(snapshot.randomLength);
+            buffer.get(snapshot.random, 0, snapshot.randomLength);
+            int[] remap = new int[buffer.getInt()];
+            for (int i = 0; i < remap.length; i++) {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                remap[i] = stream.name(new String(name, StandardCharsets.UTF_8));
+            }
+            int groups = buffer.getInt(), total = 0;
+            snapshot.groupEnds = new int[groups];
+            snapshot.unchanged = snapshot.delta? new boolean[groups] : null;
+            for (int g = 0; g < groups; g++) {
+                int size = buffer.getInt();
+                if (size < 0 && snapshot.delta) snapshot.unchanged[g] = true;
+                else {
+                    snapshot.members = grow(snapshot.members, total + size);
+                    for (int i = 0; i < size; i++) snapshot.members[total++] = buffer.getInt();
+                }
+                snapshot.groupEnds[g] = total;
+            }
+            int count = buffer.getInt(), size = buffer.getInt();
+            snapshot.reserve(count, size);
+            buffer.get(snapshot.data, 0, size);
+            ByteBuffer records = snapshot.buffer;
+            for (int i = 0; i < count; i++) {
+                snapshot.offsets[i] = records.position();
+                snapshot.ids[i] = records.getInt();
+                stream.nextId = Math.max(stream.nextId, snapshot.ids[i]);
+                int length = records.getInt(), body = records.position();
+                snapshot.rename(body, remap);
+                records.position(body + length);
+            }
+            snapshot.count = count;
+            snapshot.offsets[count] = records.position();
+            return snapshot;
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException ex) {
+            System.err.println("There were errors reading the snapshot:");
+            System.err.println(ex.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * Returns the tick of the game when the snapshot was captured.
+     * @return The tick of the snapshot.
+     */
+    public long getTick() {
+        return tick;
+    }
+    
+    /**
+     * Returns whether the snapshot only stores the changes since another snapshot.
+     * @return True if the snapshot is a delta snapshot.
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+    
+    /**
+     * Returns the amount of sprites stored in the snapshot.
+     * @return The amount of sprites.
+     */
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * Returns the amount of bytes the sprites take up in the snapshot.
+     * @return The size of the sprite data in bytes.
+     */
+    public int getDataSize() {
+        return offsets[count];
+    }
+    
+    /**
+     * Captures the current state of the game into a new snapshot of the same stream as
+     * this one, so a delta can be taken between the two snapshots.
+     * @param groups The groups to capture.
+     * @return A new snapshot of the game.
+     */
+    public Snapshot captureNext(Group... groups) {
+        Snapshot snapshot = new Snapshot(stream);
+        snapshot.recapture(groups);
+        return snapshot;
+    }
+    
+    /**
+     * Captures the current state of the game into this snapshot, replacing what it stored
+     * before. The memory of the snapshot is reused, so capturing allocates nothing unless
+     * the groups grew since the last capture.
+     * @param groups The groups to capture.
+     */
+    public void recapture(Group... groups) {
+        synchronized (stream) {
+            int total = 0;
+            for (Group group : groups) total += group.size();
+            int previous = count;
+            delta = false;
+            unchanged = null;
+            reserve(total, Math.max(total, 16) * 96);
+            members = grow(members, total);
+            if (groupEnds.length != groups.length) groupEnds = new int[groups.length];
+            stream.begin();
+            int member = 0;
+            for (int g = 0; g < groups.length; g++) {
+                List<Sprite> sprites = groups[g].getAll();
+                for (int i = 0; i < sprites.size(); i++) {
+                    Sprite sprite = sprites.get(i);
+                    int id = stream.assign(sprite);
+                    if (id > 0) add(sprite, id);
+                    else id = -id;
+                    members[member++] = id;
+                }
+                groupEnds[g] = member;
+            }
+            offsets[count] = buffer.position();
+            if (previous > count) {
+                Arrays.fill(objects, count, previous, null);
+                Arrays.fill(animations, count, previous, null);
+            }
+            tick = Game.getTick();
+            saveRandom(groups);
+        }
+    }
+    
+    /**
+     * Creates a delta snapshot that only contains the sprites that changed or were
+     * added since the passed in snapshot, along with the group contents and tick.
+     * @param base An earlier full snapshot of the same stream.
+     * @return A new delta snapshot.
+     */
+    public Snapshot delta(Snapshot base) {
+        if (delta || base.delta) throw new IllegalStateException("Deltas can only be taken between full snapshots");
+        if (base.stream != stream) throw new IllegalArgumentException("Deltas can only be taken between snapshots of the same stream");
+        int[] table = base.table();
+        Snapshot result = new Snapshot(stream);
+        result.delta = true;
+        result.tick = tick;
+        result.copyRandom(this);
+        int changed = 0, size = 0;
+        int[] records = new int[count];
+        for (int i = 0; i < count; i++) {
+            int index = find(table, base.ids, ids[i]);
+            if (index < 0 || !same(i, base, index)) {
+                records[changed++] = i;
+                size += offsets[i + 1] - offsets[i];
+            }
+        }
+        result.reserve(changed, size);
+        for (int c = 0; c < changed; c++) result.copy(this, records[c]);
+        result.offsets[result.count] = result.buffer.position();
+        result.groupEnds = new int[groupEnds.length];
+        result.unchanged = new boolean[groupEnds.length];
+        int total = 0;
+        for (int g = 0; g < groupEnds.length; g++) {
+            int start = start(g), end = groupEnds[g];
+            if (g < base.groupEnds.length && sameRange(members, start, end, base.members, base.start(g), base.groupEnds[g]))
+                result.unchanged[g] = true;
+            else {
+                result.members = grow(result.members, total + end - start);
+                System.arraycopy(members, start, result.members, total, end - start);
+                total += end - start;
+            }
+            result.groupEnds[g] = total;
+        }
+        return result;
+    }
+    
+    /**
+     * Applies a delta snapshot taken against this snapshot. The result belongs to the
+     * stream of this snapshot.
+     * @param delta A delta snapshot created with this snapshot as its base.
+     * @return A new full snapshot with the changes of the delta.
+     */
+    public Snapshot apply(Snapshot delta) {
+        if (this.delta || !delta.delta) throw new IllegalStateException("Only a delta snapshot can be applied to a full snapshot");
+        Snapshot result = new Snapshot(stream);
+        result.tick = delta.tick;
+        result.copyRandom(delta);
+        int groups = delta.groupEnds.length, total = 0;
+        result.groupEnds = new int[groups];
+        for (int g = 0; g < groups; g++) {
+            Snapshot source = delta.unchanged[g]? this : delta;
+            int start = source.start(g), end = source.groupEnds[g];
+            result.members = grow(result.members, total + end - start);
+            System.arraycopy(source.members, start, result.members, total, end - start);
+            total += end - start;
+            result.groupEnds[g] = total;
+        }
+        result.reserve(total, getDataSize() + delta.getDataSize());
+        int[] added = new int[Math.max(16, Integer.highestOneBit(Math.max(total, 1) * 4))];
+        Arrays.fill(added, -1);
+        int[] table = delta.table(), own = table(), remap = null;
+        if (delta.stream != stream) {
+            String[] names = delta.stream.names();
+            remap = new int[names.length];
+            for (int i = 0; i < names.length; i++) remap[i] = stream.name(names[i]);
+        }
+        for (int m = 0; m < total; m++) {
+            int id = result.members[m];
+            if (find(added, result.ids, id) >= 0) continue;
+            Snapshot source = delta;
+            int index = find(table, delta.ids, id);
+            if (index < 0) {
+                source = this;
+                index = find(own, ids, id);
+                if (index < 0) throw new IllegalArgumentException("The delta was not taken against this snapshot");
+            }
+            insert(added, id, result.count);
+            int start = result.buffer.position();
+            result.copy(source, index);
+            if (source == delta && remap != null) result.rename(start + 8, remap);
+        }
+        result.offsets[result.count] = result.buffer.position();
+        return result;
+    }
+    
+    /**
+     * Restores the game to the state of the snapshot. The groups are emptied and refilled
+     * with the sprites of the snapshot, which are the same objects that were captured if
+     * the snapshot was captured in this session, or new objects if it was read from bytes.
+     * The random sources of the current thread and of the groups are restored as well.
+     * @param groups The groups to restore, in the same order they were captured.
+     */
+    public void restore(Group... groups) {
+        if (delta) throw new IllegalStateException("A delta snapshot must be applied to its base before restoring");
+        if (groups.length != groupEnds.length)
+            throw new IllegalArgumentException("Expected " + groupEnds.length + " groups but got " + groups.length);
+        synchronized (stream) {
+            stream.begin();
+            for (int i = 0; i < count; i++) {
+                Sprite sprite = objects[i];
+                buffer.position(offsets[i] + 8);
+                int name = buffer.getInt(), frames = buffer.getInt();
+                if (sprite == null) {
+                    BufferedImage[] images = new BufferedImage[frames];
+                    for (int f = 0; f < frames; f++) {
+                        int asset = buffer.getInt();
+                        images[f] = asset < 0? Tools.UNDEFINED_IMAGE : Tools.loadAsset(stream.name(asset));
+                    }
+                    sprite = create(stream.name(name));
+                    if (sprite == null) continue;
+                    sprite.setAnimation(frames == 0? Animation.UNDEFINED_ANIMATION : animation(images, buffer.getInt(), buffer.getInt()));
+                    objects[i] = sprite;
+                    animations[i] = sprite.animation;
+                }
+                else {
+                    buffer.position(buffer.position() + frames * 4 + (frames > 0? 8 : 0));
+                    sprite.animation = animations[i];
+                }
+                sprite.load(buffer);
+                stream.put(sprite, ids[i]);
+            }
+        }
+        int[] table = table();
+        for (int g = 0; g < groups.length; g++) {
+            List<Sprite> sprites = groups[g].getAll();
+            sprites.clear();
+            for (int m = start(g); m < groupEnds[g]; m++) {
+                Sprite sprite = objects[find(table, ids, members[m])];
+                if (sprite != null) sprites.add(sprite);
+            }
+        }
+        Game.setTick(tick);
+        loadRandom(groups);
+    }
+    
+    /**
+     * Writes the snapshot to bytes that can be saved or sent and read again with the
+     * from bytes method.
+     * @return The bytes of the snapshot.
+     */
+    public byte[] toBytes() {
+        String[] names = stream.names();
+        byte[][] encoded = new byte[names.length][];
+        int groups = groupEnds.length, total = groups == 0? 0 : groupEnds[groups - 1];
+        int size = 4 * 8 + 8 + randomLength + 4 * (groups + total) + getDataSize();
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            size += 2 + encoded[i].length;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        bytes.putInt(MAGIC).putInt(VERSION).putInt(delta? DELTA : 0).putLong(tick);
+        bytes.putInt(randomLength).put(random, 0, randomLength);
+        bytes.putInt(encoded.length);
+        for (byte[] name : encoded) bytes.putShort((short) name.length).put(name);
+        bytes.putInt(groups);
+        for (int g = 0; g < groups; g++) {
+            bytes.putInt(unchanged != null && unchanged[g]? -1 : groupEnds[g] - start(g));
+            for (int m = start(g); m < groupEnds[g]; m++) bytes.putInt(members[m]);
+        }
+        bytes.putInt(count).putInt(getDataSize()).put(data, 0, getDataSize());
+        return bytes.array();
+    }
+    
+    /**
+     * Makes room for the amount of records and bytes of data and empties the records.
+     */
+    private void reserve(int records, int bytes) {
+        if (ids.length < records) {
+            int size = records + records / 2;
+            ids = new int[size];
+            offsets = new int[size + 1];
+            objects = Arrays.copyOf(objects, size);
+            animations = Arrays.copyOf(animations, size);
+        }
+        if (data.length < bytes) {
+            data = new byte[bytes];
+            buffer = ByteBuffer.wrap(data);
+        }
+        buffer.clear();
+        count = 0;
+        indexed = false;
+    }
+    
+    private void reserveRandom(int bytes) {
+        if (random.length < bytes) {
+            random = new byte[bytes];
+            randomState = ByteBuffer.wrap(random);
+        }
+    }
+    
+    /**
+     * Stores the random source of the current thread followed by the source of every group.
+     * Every source is stored as its length in bytes, which is negative if a group has no
+     * source yet and zero if the source cannot be saved, followed by its state.
+     */
+    private void saveRandom(Group... groups) {
+        if (sources.length != groups.length + 1) sources = new RandomSource[groups.length + 1];
+        sources[0] = Tools.random();
+        for (int g = 0; g < groups.length; g++) sources[g + 1] = groups[g].getRandom();
+        while (true) {
+            try {
+                randomState.clear();
+                for (RandomSource source : sources) {
+                    int start = randomState.position();
+                    randomState.putInt(-1);
+                    if (source != null) randomState.putInt(start, source.save(randomState)? randomState.position() - start - 4 : 0);
+                    if (randomState.getInt(start) == 0) randomState.position(start + 4);
+                }
+                randomLength = randomState.position();
+                return;
+            }
+            catch (BufferOverflowException ex) {
+                reserveRandom(random.length * 2);
+            }
+        }
+    }
+    
+    private void loadRandom(Group... groups) {
+        randomState.clear().limit(randomLength);
+        for (int s = 0; s <= groups.length && randomState.hasRemaining(); s++) {
+            int length = randomState.getInt(), end = randomState.position() + Math.max(length, 0);
+            RandomSource source = s == 0? Tools.random() : s < sources.length? sources[s] : null;
+            if (s > 0) {
+                if (length < 0) groups[s - 1].setRandom(null);
+                else if (length > 0) {
+                    if (source == null) source = groups[s - 1].getRandom();
+                    if (source == null) source = RandomSource.create(0);
+                    groups[s - 1].setRandom(source);
+                }
+            }
+            if (length > 0) source.load(randomState);
+            randomState.position(end);
+        }
+    }
+    
+    private void copyRandom(Snapshot source) {
+        reserveRandom(source.randomLength);
+        System.arraycopy(source.random, 0, random, 0, source.randomLength);
+        randomLength = source.randomLength;
+        sources = source.sources.clone();
+    }
+    
+    private void add(Sprite sprite, int id) {
+        int start = buffer.position();
+        while (true) {
+            try {
+                write(sprite, id);
+                break;
+            }
+            catch (BufferOverflowException ex) {
+                data = Arrays.copyOf(data, data.length * 2);
+                buffer = ByteBuffer.wrap(data);
+                buffer.position(start);
+            }
+        }
+        ids[count] = id;
+        offsets[count] = start;
+        objects[count] = sprite;
+        animations[count] = sprite.animation;
+        count++;
+    }
+    
+    private void copy(Snapshot source, int index) {
+        ids[count] = source.ids[index];
+        offsets[count] = buffer.position();
+        objects[count] = source.objects[index];
+        animations[count] = source.animations[index];
+        buffer.put(source.data, source.offsets[index], source.offsets[index + 1] - source.offsets[index]);
+        count++;
+    }
+    
+    private void write(Sprite sprite, int id) {
+        buffer.putInt(id);
+        int length = buffer.position();
+        buffer.putInt(0);
+        if (sprite.getClass() != lastClass) {
+            lastClass = sprite.getClass();
+            lastName = stream.name(lastClass.getName());
+        }
+        buffer.putInt(lastName);
+        if (sprite.animation == Animation.UNDEFINED_ANIMATION) buffer.putInt(0);
+        else {
+            BufferedImage[] frames = sprite.animation.getOriginalFrames();
+            buffer.putInt(frames.length);
+            for (BufferedImage frame : frames) buffer.putInt(stream.asset(frame));
+            buffer.putInt(sprite.animation.getWidth()).putInt(sprite.animation.getHeight());
+        }
+        sprite.save(buffer);
+        buffer.putInt(length, buffer.position() - length - 4);
+    }
+    
+    /**
+     * Replaces the class name and image numbers of the record starting at the body with
+     * the numbers they map to.
+     */
+    private void rename(int body, int[] remap) {
+        buffer.putInt(body, remap[buffer.getInt(body)]);
+        int frames = buffer.getInt(body + 4);
+        for (int f = 0; f < frames; f++) {
+            int at = body + 8 + f * 4, name = buffer.getInt(at);
+            if (name >= 0) buffer.putInt(at, remap[name]);
+        }
+    }
+    
+    private int start(int group) {
+        return group == 0? 0 : groupEnds[group - 1];
+    }
+    
+    private static int[] grow(int[] array, int size) {
+        return array.length >= size? array : Arrays.copyOf(array, size + size / 2);
+    }
+    
+    private static boolean sameRange(int[] first, int start, int end, int[] second, int otherStart, int otherEnd) {
+        if (end - start != otherEnd - otherStart) return false;
+        for (int i = 0; i < end - start; i++) if (first[start + i] != second[otherStart + i]) return false;
+        return true;
+    }
+    
+    /**
+     * Creates an animation of the frames scaled to the size they had when they were captured,
+     * which also gives frames that could not be loaded their original size.
+     */
+    private static Animation animation(BufferedImage[] frames, int width, int height) {
+        Animation animation = new Animation(frames);
+        if (animation.getWidth() != width || animation.getHeight() != height) animation.setDimensions(width, height);
+        return animation;
+    }
+    
+    private static Sprite create(String name) {
+        try {
+            return (Sprite) Class.forName(name).getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | ClassCastException ex) {
+            System.err.println("There were errors recreating a sprite of type '" + name + "':");
+            System.err.println(ex.toString());
+            return null;
+        }
+    }
+    
+    private boolean same(int i, Snapshot other, int j) {
+        int start = offsets[i], length = offsets[i + 1] - start, otherStart = other.offsets[j];
+        if (length != other.offsets[j + 1] - otherStart || objects[i] != other.objects[j] || animations[i] != other.animations[j])
+            return false;
+        for (int k = 0; k < length; k++) if (data[start + k] != other.data[otherStart + k]) return false;
+        return true;
+    }
+    
+    /**
+     * Returns an open addressing table from the id of every sprite to its index.
+     */
+    private int[] table() {
+        if (!indexed) {
+            int size = Math.max(16, Integer.highestOneBit(Math.max(count, 1) * 4));
+            if (table == null || table.length < size) table = new int[size];
+            Arrays.fill(table, -1);
+            for (int i = 0; i < count; i++) insert(table, ids[i], i);
+            indexed = true;
+        }
+        return table;
+    }
+    
+    private static void insert(int[] table, int id, int index) {
+        int mask = table.length - 1, slot = (id * 0x9E3779B9) & mask;
+        while (table[slot] >= 0) slot = (slot + 1) & mask;
+        table[slot] = index;
+    }
+    
+    private static int find(int[] table, int[] ids, int id) {
+        int mask = table.length - 1, slot = (id * 0x9E3779B9) & mask;
+        while (table[slot] >= 0) {
+            if (ids[table[slot]] == id) return table[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    /**
+     * The numbers shared by the snapshots of one stream. Every class name and image key is
+     * stored once and referred to by its index, and every sprite keeps its number for as long
+     * as it is captured. The table of sprites also stores the last capture that saw every
+     * sprite, which finds sprites that are in several groups with the same lookup, and sprites
+     * that were not in the last two captures are dropped whenever the table fills up.
+     */
+    private static final class Stream {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> nameIndices = new HashMap<>();
+        private final Map<BufferedImage, Integer> assets = new WeakHashMap<>();
+        private Sprite[] sprites = new Sprite[64];
+        private int[] values = new int[128];
+        private int size, nextId, capture;
+        
+        /**
+         * Starts a capture or restore.
+         */
+        void begin() {
+            capture++;
+        }
+        
+        /**
+         * Returns the number of the sprite, which it keeps from earlier captures, or the
+         * negative of the number if the sprite was already stored in this capture.
+         */
+        int assign(Sprite sprite) {
+            int slot = slot(sprite);
+            if (sprites[slot] == sprite) {
+                if (values[slot * 2 + 1] == capture) return -values[slot * 2];
+                values[slot * 2 + 1] = capture;
+                return values[slot * 2];
+            }
+            if (full()) slot = slot(sprite);
+            sprites[slot] = sprite;
+            values[slot * 2] = ++nextId;
+            values[slot * 2 + 1] = capture;
+            size++;
+            return nextId;
+        }
+        
+        /**
+         * Gives a restored sprite the number it has in the snapshot.
+         */
+        void put(Sprite sprite, int id) {
+            int slot = slot(sprite);
+            if (sprites[slot] != sprite) {
+                if (full()) slot = slot(sprite);
+                sprites[slot] = sprite;
+                size++;
+            }
+            values[slot * 2] = id;
+            values[slot * 2 + 1] = capture;
+            nextId = Math.max(nextId, id);
+        }
+        
+        /**
+         * Returns the slot of the sprite or the empty slot where it belongs.
+         */
+        private int slot(Sprite sprite) {
+            int mask = sprites.length - 1, slot = (System.identityHashCode(sprite) * 0x9E3779B9) & mask;
+            while (sprites[slot] != null && sprites[slot] != sprite) slot = (slot + 1) & mask;
+            return slot;
+        }
+        
+        /**
+         * Rebuilds the table if it is half full, without the sprites that were not in the last
+         * two captures, and returns true if it was rebuilt.
+         */
+        private boolean full() {
+            if ((size + 1) * 2 < sprites.length) return false;
+            int live = 0;
+            for (int i = 0; i < sprites.length; i++) if (sprites[i] != null && values[i * 2 + 1] >= capture - 1) live++;
+            Sprite[] oldSprites = sprites;
+            int[] oldValues = values;
+            sprites = new Sprite[Math.max(64, Integer.highestOneBit(Math.max(live, 1) * 4))];
+            values = new int[sprites.length * 2];
+            size = 0;
+            for (int i = 0; i < oldSprites.length; i++) {
+                if (oldSprites[i] == null || oldValues[i * 2 + 1] < capture - 1) continue;
+                int slot = slot(oldSprites[i]);
+                sprites[slot] = oldSprites[i];
+                values[slot * 2] = oldValues[i * 2];
+                values[slot * 2 + 1] = oldValues[i * 2 + 1];
+                size++;
+            }
+            return true;
+        }
+        
+        synchronized String[] names() {
+            return names.toArray(new String[names.size()]);
+        }
+        
+        synchronized String name(int index) {
+            return names.get(index);
+        }
+        
+        synchronized int name(String name) {
+            Integer index = nameIndices.get(name);
+            if (index == null) {
+                index = names.size();
+                names.add(name);
+                nameIndices.put(name, index);
+            }
+            return index;
+        }
+        
+        /**
+         * Returns the index of the key the image was loaded with, or -1 if it was not loaded from a file.
+         */
+        synchronized int asset(BufferedImage image) {
+            Integer asset = assets.get(image);
+            if (asset == null) {
+                String key = Tools.getAssetKey(image);
+                asset = key == null? -1 : name(key);
+                assets.put(image, asset);
+            }
+            return asset;
+        }
+    }
+}
@@ -5,10 +5,12 @@ import javax.sound.sampled.Clip;
 import javax.sound.sampled.FloatControl;
 
 /**
- * An easy to use class for sound playback that wraps the java clip class.
+ * An easy to use class for sound playback that wraps the java clip class,
+ * or streams the sound from its file for long sounds such as music.
  */
 public class Sound {
     private Clip clip;
+    private SoundStream stream;
     private FloatControl volumeControl;
     private float volume;
     private boolean failed, pause = true, loop;
@@ -19,7 +21,25 @@ public class Sound {
      * @param path The location of the sound file relative to the package of the project.
      */
     public Sound(String path) {
+        this(path, false);
+    }
+    
+    /**
+     * Creates a sound and opens the file at the passed in path. A streamed sound is
+     * decoded in small chunks on a background thread while it plays instead of all at
+     * once, which keeps memory use low and loading fast for long sounds such as music.<br>
+     * <b>Note</b>: This class only has support for certain encodings of wav files.
+     * @param path The location of the sound file relative to the package of the project.
+     * @param stream True to stream the sound, false to load all of it into memory.
+     */
+    public Sound(String path, boolean stream) {
+        Object event = Recorder.beginAssetLoad();
         try {
+            if (stream) {
+                this.stream = new SoundStream(path);
+                volumeControl = this.stream.getVolumeControl();
+                return;
+            }
             clip = AudioSystem.getClip();
             clip.open(AudioSystem.getAudioInputStream(Tools.getRoot().getResourceAsStream(path)));
             volumeControl = (FloatControl) clip.getControl(FloatControl.Type.MASTER_GAIN);
@@ -29,8 +49,19 @@ public class Sound {
             System.err.println(ex.toString());
             failed = true;
         }
+        finally {
+            Recorder.endAssetLoad(event, path, stream? "sound stream" : "sound", !failed);
+        }
     }
-
+    
+    /**
+     * Creates a sound that plays an already opened stream.
+     */
+    Sound(SoundStream stream) {
+        this.stream = stream;
+        volumeControl = stream.getVolumeControl();
+    }
+    
     /**
      * Returns the relative volume of the sound, where zero is the default volume,
      * negative numbers mean quieter and positive numbers mean louder than the default.
@@ -44,7 +75,12 @@ public class Sound {
      * Plays the full sound once.
      */
     public void play() {
-        if (!failed) {
+        if (!failed && stream != null) {
+            pause = false;
+            loop = false;
+            stream.start(false);
+        }
+        else if (!failed) {
             clip.stop();
             reset();
             pause = false;
@@ -57,7 +93,12 @@ public class Sound {
      * Loops the sound infinitely.
      */
     public void loop() {
-        if (!failed) {
+        if (!failed && stream != null) {
+            pause = false;
+            loop = true;
+            stream.start(true);
+        }
+        else if (!failed) {
             clip.stop();
             reset();
             pause = false;
@@ -72,7 +113,8 @@ public class Sound {
      */
     public void pause(boolean pause) {
         if (!failed && this.pause != pause) {
-            if (pause) clip.stop();
+            if (stream != null) stream.pause(pause);
+            else if (pause) clip.stop();
             else {
                 if (loop) clip.loop(Clip.LOOP_CONTINUOUSLY);
                 else clip.start();
@@ -82,10 +124,13 @@ public class Sound {
     }
     
     /**
-     * Sets the sound back to the start without interrupting playback.
+     * Sets the sound back to the start without interrupting playback, and a paused sound
+     * stays paused until it is resumed from the start.
      */
     public void reset() {
-        if (!failed) clip.setFramePosition(0);
+        if (failed) return;
+        if (stream == null) clip.setFramePosition(0);
+        else if (!stream.isFinished()) stream.start(loop, pause);
     }
     
     /**
@@ -94,6 +139,7 @@ public class Sound {
      * @param vol The new relative volume of the sound.
      */
     public void setVolume(float vol) {
+        if (failed) return;
         if (vol > volumeControl.getMaximum()) volumeControl.setValue(volumeControl.getMaximum());
         else if (vol < volumeControl.getMinimum()) volumeControl.setValue(volumeControl.getMinimum());
         else volumeControl.setValue(vol);
@@ -105,7 +151,8 @@ public class Sound {
      * @return True if the sound is not paused and is currently playing.
      */
     public boolean isPlaying() {
-        if (!failed) return !pause && clip.isActive();
+        if (!failed && stream != null) return !pause && stream.isActive();
+        else if (!failed) return !pause && clip.isActive();
         else return false;
     }
     
@@ -113,7 +160,7 @@ public class Sound {
      * Returns the clip the sound is using for more advanced operations.<br>
      * <b>Note</b>: Some changes to the clip may cause unexpected behavior
      * in the sound class.
-     * @return
+     * @return The clip of the sound or null if the sound is streamed.
      */
     public Clip getClip() {
         return clip;
@@ -0,0 +1,151 @@
+package gametools;
+
+/**
+ * A short sound that can be played many times at once, such as a shot or a footstep.
+ * All sound effects are mixed together into one audio line, and effects loaded from
+ * the same path share their decoded samples. Every play uses one voice from a fixed
+ * pool, and when all voices are busy the one with the lowest priority is replaced.
+ */
+public class SoundEffect {
+    private final short[] samples;
+    private float volume;
+    private int priority;
+    
+    /**
+     * Creates a sound effect from the file at the passed in path. The file is only
+     * decoded the first time the path is used.<br>
+     * <b>Note</b>: This class only has support for certain encodings of wav files.
+     * @param path The location of the sound file relative to the package of the project.
+     */
+    public SoundEffect(String path) {
+        samples = SoundMixer.load(path);
+    }
+    
+    /**
+     * Returns the relative volume new plays of the sound effect start with, where zero is
+     * the default volume, negative numbers mean quieter and positive numbers mean louder.
+     * @return The relative volume of the sound effect in decibels.
+     */
+    public float getVolume() {
+        return volume;
+    }
+    
+    /**
+     * Returns the priority new plays of the sound effect start with.
+     * @return The priority of the sound effect.
+     */
+    public int getPriority() {
+        return priority;
+    }
+    
+    /**
+     * Returns the length of the sound effect.
+     * @return The length of the sound in seconds or zero if it failed to load.
+     */
+    public double getLength() {
+        return (samples != null)? samples.length / 2 / SoundMixer.RATE : 0;
+    }
+    
+    /**
+     * Sets the relative volume new plays of the sound effect start with, where zero is
+     * the default volume, negative numbers mean quieter and positive numbers mean louder.
+     * @param vol The new relative volume in decibels.
+     */
+    public void setVolume(float vol) {
+        volume = vol;
+    }
+    
+    /**
+     * Sets the priority new plays of the sound effect start with. When all voices are
+     * in use a new play only replaces a voice with the same or a lower priority.
+     * The default is zero.
+     * @param priority The priority of the sound effect.
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+    
+    /**
+     * Plays the full sound effect once, overlapping with any earlier plays.
+     * @return A handle to the voice playing the sound or negative one if there was no free voice.
+     */
+    public int play() {
+        return play(volume, priority);
+    }
+    
+    /**
+     * Plays the full sound effect once with a custom volume and priority.
+     * @param vol The relative volume of this play in decibels.
+     * @param priority The priority of this play.
+     * @return A handle to the voice playing the sound or negative one if there was no free voice.
+     */
+    public int play(float vol, int priority) {
+        return SoundMixer.play(samples, vol, priority, false);
+    }
+    
+    /**
+     * Loops the sound effect until it is stopped.
+     * @return A handle to the voice playing the sound or negative one if there was no free voice.
+     */
+    public int loop() {
+        return SoundMixer.play(samples, volume, priority, true);
+    }
+    
+    /**
+     * Stops a single play of the sound effect.
+     * @param voice The handle returned when the sound was played.
+     */
+    public void stop(int voice) {
+        SoundMixer.stop(voice);
+    }
+    
+    /**
+     * Stops every play of the sound effect.
+     */
+    public void stop() {
+        SoundMixer.stopAll(samples);
+    }
+    
+    /**
+     * Changes the volume of a single play of the sound effect while it is playing.
+     * @param voice The handle returned when the sound was played.
+     * @param vol The new relative volume in decibels.
+     */
+    public void setVolume(int voice, float vol) {
+        SoundMixer.setVolume(voice, vol);
+    }
+    
+    /**
+     * Returns if any play of the sound effect is still playing.
+     * @return True if the sound effect is using at least one voice.
+     */
+    public boolean isPlaying() {
+        return SoundMixer.isPlaying(samples);
+    }
+    
+    /**
+     * Returns the amount of voices that are currently playing sound effects.
+     * @return The amount of voices in use.
+     */
+    public static int getActiveVoices() {
+        return SoundMixer.getActiveVoices();
+    }
+    
+    /**
+     * Returns the size of the voice pool, which is the most sound effects that can play at once.
+     * @return The amount of voices in the pool.
+     */
+    public static int getVoiceCount() {
+        return SoundMixer.getVoiceCount();
+    }
+    
+    /**
+     * Sets the size of the voice pool, which is the most sound effects that can play at once.
+     * The default is 32 and the largest allowed amount is 255.<br>
+     * <b>Note</b>: This stops every sound effect that is currently playing.
+     * @param count The amount of voices in the pool.
+     */
+    public static void setVoiceCount(int count) {
+        SoundMixer.setVoiceCount(count);
+    }
+}
@@ -0,0 +1,272 @@
+package gametools;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * A software mixer that plays any amount of overlapping sound effects through one
+ * audio line. Samples are decoded once per path and shared, and a fixed pool of
+ * voices is mixed on a dedicated audio thread.
+ */
+final class SoundMixer {
+    static final float RATE = 44100;
+    static final AudioFormat FORMAT = new AudioFormat(RATE, 16, 2, true, false);
+    private static final int CHUNK = 512;
+    private static final Map<String, short[]> samples = new ConcurrentHashMap<>();
+    private static final Object lock = new Object();
+    private static short[][] pcm = new short[32][];
+    private static int[] position = new int[32], priority = new int[32], generation = new int[32];
+    private static float[] gain = new float[32];
+    private static boolean[] looping = new boolean[32];
+    private static long[] started = new long[32];
+    private static long counter;
+    private static int active;
+    private static Thread thread;
+    private static boolean failed;
+    
+    private SoundMixer() {}
+    
+    /**
+     * Returns the decoded samples for the sound at the path, loading them the first time.
+     * @param path The location of the sound file relative to the package of the project.
+     * @return Interleaved stereo samples at the mixer rate or null if the sound could not be loaded.
+     */
+    static short[] load(String path) {
+        short[] data = samples.get(path);
+        if (data != null) Metrics.SOUND_CACHE_HITS.increment();
+        else {
+            Metrics.SOUND_CACHE_MISSES.increment();
+            Object event = Recorder.beginAssetLoad();
+            data = decode(path);
+            Recorder.endAssetLoad(event, path, "sound effect", data != null);
+            if (data != null) samples.put(path, data);
+        }
+        return data;
+    }
+    
+    private static short[] decode(String path) {
+        try (AudioInputStream source = AudioSystem.getAudioInputStream(
+                new BufferedInputStream(Tools.getRoot().getResourceAsStream(path)))) {
+            AudioFormat base = source.getFormat();
+            AudioFormat pcmFormat = new AudioFormat(base.getSampleRate(), 16, base.getChannels(), true, false);
+            AudioInputStream stream = AudioSystem.getAudioInputStream(pcmFormat, source);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read = stream.read(buffer); read > 0; read = stream.read(buffer)) bytes.write(buffer, 0, read);
+            return resample(bytes.toByteArray(), pcmFormat.getChannels(), pcmFormat.getSampleRate());
+        }
+        catch (Exception ex) {
+            System.err.println("There were errors loading the sound '" + path + "':");
+            System.err.println(ex.toString());
+            return null;
+        }
+    }
+    
+    /**
+     * Converts little endian samples to interleaved stereo at the mixer rate.
+     */
+    static short[] resample(byte[] data, int channels, float rate) {
+        int frames = data.length / (2 * channels);
+        double step = rate / RATE;
+        int length = (int) (frames / step);
+        short[] result = new short[length * 2];
+        for (int i = 0; i < length; i++) {
+            double at = i * step;
+            int frame = (int) at;
+            int next = Math.min(frame + 1, frames - 1);
+            double part = at - frame;
+            for (int c = 0; c < 2; c++) {
+                int channel = Math.min(c, channels - 1);
+                int first = sample(data, frame * channels + channel);
+                int second = sample(data, next * channels + channel);
+                result[i * 2 + c] = (short) (first + (second - first) * part);
+            }
+        }
+        return result;
+    }
+    
+    private static int sample(byte[] data, int i) {
+        return (short) ((data[i * 2] & 0xFF) | (data[i * 2 + 1] << 8));
+    }
+    
+    /**
+     * Starts playing samples on a free voice, or steals the voice with the lowest priority
+     * if all of them are in use and none has a higher priority than the new sound.
+     * @return A handle for the voice or negative one if no voice was available.
+     */
+    static int play(short[] data, float volume, int level, boolean loop) {
+        if (data == null || data.length == 0 || failed) return -1;
+        synchronized (lock) {
+            int voice = -1;
+            for (int i = 0; i < pcm.length && voice < 0; i++) if (pcm[i] == null) voice = i;
+            if (voice < 0) {
+                for (int i = 0; i < pcm.length; i++) {
+                    if (priority[i] > level) continue;
+                    if (voice < 0 || priority[i] < priority[voice]
+                            || (priority[i] == priority[voice] && started[i] < started[voice])) voice = i;
+                }
+                if (voice < 0) return -1;
+                active--;
+            }
+            pcm[voice] = data;
+            position[voice] = 0;
+            gain[voice] = (float) Math.pow(10, volume / 20);
+            priority[voice] = level;
+            looping[voice] = loop;
+            started[voice] = counter++;
+            generation[voice] = (generation[voice] + 1) & 0x7FFFFF;
+            active++;
+            start();
+            lock.notifyAll();
+            return (generation[voice] << 8) | voice;
+        }
+    }
+    
+    /**
+     * Stops the voice if it is still playing the sound it was started with.
+     */
+    static void stop(int handle) {
+        if (handle < 0) return;
+        synchronized (lock) {
+            int voice = handle & 0xFF;
+            if (voice < pcm.length && generation[voice] == handle >>> 8 && pcm[voice] != null) release(voice);
+        }
+    }
+    
+    /**
+     * Stops every voice that is playing the passed in samples.
+     */
+    static void stopAll(short[] data) {
+        synchronized (lock) {
+            for (int i = 0; i < pcm.length; i++) if (pcm[i] == data && data != null) release(i);
+        }
+    }
+    
+    /**
+     * Changes the volume of a voice if it is still playing the sound it was started with.
+     */
+    static void setVolume(int handle, float volume) {
+        if (handle < 0) return;
+        synchronized (lock) {
+            int voice = handle & 0xFF;
+            if (voice < pcm.length && generation[voice] == handle >>> 8) gain[voice] = (float) Math.pow(10, volume / 20);
+        }
+    }
+    
+    static boolean isPlaying(short[] data) {
+        synchronized (lock) {
+            for (short[] voice : pcm) if (voice == data && data != null) return true;
+            return false;
+        }
+    }
+    
+    static int getActiveVoices() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+    
+    static int getVoiceCount() {
+        synchronized (lock) {
+            return pcm.length;
+        }
+    }
+    
+    /**
+     * Changes the size of the voice pool and stops all playing voices. Every new voice
+     * continues from the highest generation of the old pool, so handles of stopped voices
+     * never match a new voice.
+     */
+    static void setVoiceCount(int count) {
+        count = Math.max(1, Math.min(count, 255));
+        synchronized (lock) {
+            pcm = new short[count][];
+            position = new int[count];
+            priority = new int[count];
+            int highest = 0;
+            for (int old : generation) highest = Math.max(highest, old);
+            generation = new int[count];
+            Arrays.fill(generation, highest);
+            gain = new float[count];
+            looping = new boolean[count];
+            started = new long[count];
+            active = 0;
+        }
+    }
+    
+    private static void release(int voice) {
+        pcm[voice] = null;
+        active--;
+    }
+    
+    private static void start() {
+        if (thread != null) return;
+        thread = new Thread(SoundMixer::mix, "GameTools Audio");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    private static void mix() {
+        SourceDataLine line;
+        try {
+            line = AudioSystem.getSourceDataLine(FORMAT);
+            line.open(FORMAT, CHUNK * 16);
+            line.start();
+        }
+        catch (Exception ex) {
+            System.err.println("There were errors opening the audio line:");
+            System.err.println(ex.toString());
+            synchronized (lock) {
+                failed = true;
+                for (int i = 0; i < pcm.length; i++) if (pcm[i] != null) release(i);
+            }
+            return;
+        }
+        int[] sum = new int[CHUNK * 2];
+        byte[] output = new byte[CHUNK * 4];
+        while (true) {
+            synchronized (lock) {
+                while (active == 0) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException ex) {
+                        line.close();
+                        return;
+                    }
+                }
+                Arrays.fill(sum, 0);
+                for (int v = 0; v < pcm.length; v++) {
+                    short[] data = pcm[v];
+                    if (data == null) continue;
+                    float level = gain[v];
+                    int at = position[v];
+                    for (int i = 0; i < sum.length; i++) {
+                        if (at >= data.length) {
+                            if (!looping[v]) {
+                                release(v);
+                                break;
+                            }
+                            at = 0;
+                        }
+                        sum[i] += (int) (data[at++] * level);
+                    }
+                    position[v] = at;
+                }
+            }
+            for (int i = 0; i < sum.length; i++) {
+                int value = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sum[i]));
+                output[i * 2] = (byte) value;
+                output[i * 2 + 1] = (byte) (value >> 8);
+            }
+            line.write(output, 0, output.length);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package gametools;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays a long sound without decoding all of it into memory. A background thread decodes
+ * the file in chunks into a small ring of buffers, and a second thread feeds those buffers
+ * into an audio line. When looping the file is reopened as soon as it ends so there is no gap.
+ */
+final class SoundStream {
+    private static final int BUFFERS = 4, BUFFER_SIZE = 1 << 15;
+    private final String path;
+    private final AudioFormat format;
+    private final SourceDataLine line;
+    private final byte[][] buffers = new byte[BUFFERS][BUFFER_SIZE];
+    private final int[] lengths = new int[BUFFERS];
+    private final BlockingQueue<Integer> free = new ArrayBlockingQueue<>(BUFFERS), filled = new ArrayBlockingQueue<>(BUFFERS);
+    private Thread decoder, feeder;
+    private volatile boolean loop, finished = true;
+    
+    /**
+     * Opens the sound file and an audio line matching its format.
+     * @param path The location of the sound file relative to the package of the project.
+     * @throws Exception If the file or the audio line could not be opened.
+     */
+    SoundStream(String path) throws Exception {
+        this(path, null);
+    }
+    
+    /**
+     * Opens the sound file and plays it through the passed in line.
+     * @param path The location of the sound file relative to the package of the project.
+     * @param line The line to play the sound through, or null to open one matching the file.
+     * @throws Exception If the file or the audio line could not be opened.
+     */
+    SoundStream(String path, SourceDataLine line) throws Exception {
+        this.path = path;
+        try (AudioInputStream stream = open()) {
+            format = stream.getFormat();
+        }
+        this.line = line != null? line : AudioSystem.getSourceDataLine(format);
+        this.line.open(format, BUFFER_SIZE * 2);
+    }
+    
+    FloatControl getVolumeControl() {
+        return (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+    }
+    
+    /**
+     * Stops any current playback and starts streaming from the beginning of the file.
+     * @param loop Whether to restart the file every time it ends.
+     */
+    void start(boolean loop) {
+        start(loop, false);
+    }
+    
+    /**
+     * Stops any current playback and starts streaming from the beginning of the file.
+     * @param loop Whether to restart the file every time it ends.
+     * @param paused True to fill the buffers without playing until the stream is resumed.
+     */
+    synchronized void start(boolean loop, boolean paused) {
+        stop();
+        this.loop = loop;
+        finished = false;
+        free.clear();
+        filled.clear();
+        for (int i = 0; i < BUFFERS; i++) free.add(i);
+        decoder = new Thread(this::decode, "GameTools Sound Decoder");
+        feeder = new Thread(this::feed, "GameTools Sound Feeder");
+        decoder.setDaemon(true);
+        feeder.setDaemon(true);
+        if (!paused) line.start();
+        decoder.start();
+        feeder.start();
+    }
+    
+    /**
+     * Stops playback and both background threads, discarding any buffered audio.
+     */
+    synchronized void stop() {
+        Thread[] threads = {decoder, feeder};
+        for (Thread thread : threads) if (thread != null) thread.interrupt();
+        line.stop();
+        line.flush();
+        for (Thread thread : threads) {
+            if (thread == null) continue;
+            try {
+                thread.join();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        decoder = null;
+        feeder = null;
+        line.flush();
+        finished = true;
+    }
+    
+    /**
+     * Pauses or resumes the audio line without losing the buffered audio.
+     */
+    void pause(boolean pause) {
+        if (pause) line.stop();
+        else if (!finished) line.start();
+    }
+    
+    /**
+     * Returns true if the stream was not started or reached its end.
+     */
+    boolean isFinished() {
+        return finished;
+    }
+    
+    boolean isActive() {
+        return !finished && line.isActive();
+    }
+    
+    private AudioInputStream open() throws Exception {
+        AudioInputStream source = AudioSystem.getAudioInputStream(
+                new BufferedInputStream(Tools.getRoot().getResourceAsStream(path)));
+        AudioFormat base = source.getFormat();
+        if (base.getEncoding() == AudioFormat.Encoding.PCM_SIGNED || base.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED)
+            return source;
+        AudioFormat decoded = new AudioFormat(base.getSampleRate(), 16, base.getChannels(), true, false);
+        return AudioSystem.getAudioInputStream(decoded, source);
+    }
+    
+    private void decode() {
+        AudioInputStream stream = null;
+        try {
+            stream = open();
+            int frame = format.getFrameSize();
+            while (!Thread.interrupted()) {
+                int index = free.take();
+                byte[] buffer = buffers[index];
+                int length = 0, limit = BUFFER_SIZE - BUFFER_SIZE % frame;
+                while (length < limit) {
+                    int read = stream.read(buffer, length, limit - length);
+                    if (read > 0) length += read;
+                    else if (loop) {
+                        stream.close();
+                        stream = open();
+                    }
+                    else break;
+                }
+                lengths[index] = length;
+                filled.put(index);
+                if (length < limit) {
+                    int end = free.take();
+                    lengths[end] = -1;
+                    filled.put(end);
+                    return;
+                }
+            }
+        }
+        catch (InterruptedException ex) {}
+        catch (Exception ex) {
+            System.err.println("There were errors streaming the sound '" + path + "':");
+            System.err.println(ex.toString());
+            filled.offer(-1);
+        }
+        finally {
+            if (stream != null) {
+                try {
+                    stream.close();
+                }
+                catch (IOException ex) {}
+            }
+        }
+    }
+    
+    private void feed() {
+        try {
+            while (!Thread.interrupted()) {
+                int index = filled.take();
+                if (index < 0 || lengths[index] < 0) {
+                    line.drain();
+                    finished = true;
+                    return;
+                }
+                line.write(buffers[index], 0, lengths[index]);
+                free.put(index);
+            }
+        }
+        catch (InterruptedException ex) {}
+    }
+}
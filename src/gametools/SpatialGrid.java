@@ -0,0 +1,259 @@
+package gametools;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A broad phase index of the sprites of a group, which sorts the sprites into square cells
+ * stored in a hash table of primitive arrays so queries only test the sprites near them.
+ * The index is rebuilt at most once per frame the first time it is queried, or sooner when
+ * the group is changed, so it costs nothing for groups that are never queried. Sprites that
+ * leave their cells while the group updates them are tested by every query until the next
+ * rebuild, and the index is rebuilt before the next query once too many sprites did.
+ */
+final class SpatialGrid {
+    private static final int LARGE = 64, OUTSIDE = Integer.MAX_VALUE;
+    private final double cellSize;
+    private Sprite[] sprites = new Sprite[0];
+    private int[] starts = new int[1], entries = new int[0], large = new int[0], stamps = new int[0], candidates = new int[16];
+    private int[] cells = new int[0];
+    private int count, mask, largeCount, movedLimit, stamp;
+    private double minX, minY, maxX, maxY;
+    private long tick = Long.MIN_VALUE;
+    private boolean stale = true;
+    
+    SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+    
+    double getCellSize() {
+        return cellSize;
+    }
+    
+    Sprite get(int i) {
+        return sprites[i];
+    }
+    
+    /**
+     * Marks the index to be rebuilt before the next query.
+     */
+    void invalidate() {
+        stale = true;
+    }
+    
+    /**
+     * Checks whether the sprite at the position in the list the grid was built from left
+     * the cells it was sorted into, and if so tests it in every query from now on, the same
+     * way as sprites that cover too many cells. The index is marked to be rebuilt once too
+     * many sprites moved, or if the position no longer holds the sprite.
+     */
+    void moved(int i, Sprite sprite) {
+        if (stale) return;
+        if (i >= count || sprites[i] != sprite) {
+            stale = true;
+            return;
+        }
+        int at = i * 4;
+        if (cells[at] == OUTSIDE) return;
+        double reach = reach(sprite);
+        if (cell(sprite.x - reach) == cells[at] && cell(sprite.y - reach) == cells[at + 1]
+                && cell(sprite.x + sprite.width + reach) == cells[at + 2] && cell(sprite.y + sprite.height + reach) == cells[at + 3]) return;
+        if (largeCount == movedLimit) {
+            stale = true;
+            return;
+        }
+        if (largeCount == large.length) large = Arrays.copyOf(large, Math.max(8, largeCount * 2));
+        large[largeCount++] = i;
+        cells[at] = OUTSIDE;
+    }
+    
+    /**
+     * Rebuilds the index if the group changed or a new frame started since it was built.
+     */
+    void update(List<Sprite> elements) {
+        if (stale || tick != Game.getTick() || count != elements.size()) build(elements);
+    }
+    
+    /**
+     * Sorts the sprites into the cells their boxes and colliders cover, where sprites that
+     * cover too many cells are kept in a separate list that every query tests.
+     */
+    void build(List<Sprite> elements) {
+        count = elements.size();
+        if (sprites.length < count) {
+            sprites = new Sprite[count + count / 2];
+            stamps = new int[sprites.length];
+            cells = new int[sprites.length * 4];
+        }
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        int total = 0, i = 0;
+        largeCount = 0;
+        for (Sprite sprite : elements) {
+            sprites[i] = sprite;
+            double reach = reach(sprite);
+            double left = sprite.x - reach, top = sprite.y - reach, right = sprite.x + sprite.width + reach, bottom = sprite.y + sprite.height + reach;
+            minX = Math.min(minX, left);
+            minY = Math.min(minY, top);
+            maxX = Math.max(maxX, right);
+            maxY = Math.max(maxY, bottom);
+            int at = i * 4;
+            cells[at] = cell(left);
+            cells[at + 1] = cell(top);
+            cells[at + 2] = cell(right);
+            cells[at + 3] = cell(bottom);
+            long covered = (long) (cells[at + 2] - cells[at] + 1) * (cells[at + 3] - cells[at + 1] + 1);
+            if (covered > LARGE) {
+                if (largeCount == large.length) large = Arrays.copyOf(large, Math.max(8, largeCount * 2));
+                large[largeCount++] = i;
+                cells[at] = OUTSIDE;
+            }
+            else total += covered;
+            i++;
+        }
+        movedLimit = largeCount + Math.max(LARGE, count / 16);
+        int buckets = Integer.highestOneBit(Math.max(total, 8) * 2 - 1) << 1;
+        mask = buckets - 1;
+        if (starts.length != buckets + 1) starts = new int[buckets + 1];
+        else Arrays.fill(starts, 0);
+        if (entries.length < total) entries = new int[total + total / 2];
+        for (int pass = 0; pass < 2; pass++) {
+            for (i = 0; i < count; i++) {
+                int at = i * 4;
+                if (cells[at] == OUTSIDE) continue;
+                for (int row = cells[at + 1]; row <= cells[at + 3]; row++) {
+                    for (int column = cells[at]; column <= cells[at + 2]; column++) {
+                        if (pass == 0) starts[bucket(column, row)]++;
+                        else entries[--starts[bucket(column, row)]] = i;
+                    }
+                }
+            }
+            if (pass == 0) for (int b = 1; b <= buckets; b++) starts[b] += starts[b - 1];
+        }
+        for (i = count; i < sprites.length && sprites[i] != null; i++) sprites[i] = null;
+        tick = Game.getTick();
+        stale = false;
+    }
+    
+    /**
+     * Collects every sprite registered in the cells that cover the rectangle once.
+     * @return The amount of candidates, which can be read with the candidate method.
+     */
+    int collect(double left, double top, double right, double bottom) {
+        nextStamp();
+        int found = 0;
+        for (int i = 0; i < largeCount; i++) found = add(large[i], found);
+        int firstColumn = cell(Math.max(left, minX)), lastColumn = cell(Math.min(right, maxX));
+        int firstRow = cell(Math.max(top, minY)), lastRow = cell(Math.min(bottom, maxY));
+        if (firstColumn > lastColumn || firstRow > lastRow) return found;
+        if ((long) (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1) > mask) {
+            for (int i = 0; i < count; i++) found = add(i, found);
+            return found;
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int bucket = bucket(column, row);
+                for (int e = starts[bucket]; e < starts[bucket + 1]; e++) found = add(entries[e], found);
+            }
+        }
+        return found;
+    }
+    
+    Sprite candidate(int i) {
+        return sprites[candidates[i]];
+    }
+    
+    /**
+     * Returns the position of the candidate in the list the grid was built from.
+     */
+    int candidateIndex(int i) {
+        return candidates[i];
+    }
+    
+    /**
+     * Walks the ray through the cells it crosses in order and stops at the first cell that
+     * is past the closest hit so far.
+     */
+    RayHit raycast(double x, double y, double angle, double maxDist) {
+        double dx = Math.cos(angle), dy = Math.sin(angle), inverseX = 1 / dx, inverseY = 1 / dy;
+        nextStamp();
+        Sprite hit = null;
+        double best = maxDist;
+        for (int i = 0; i < largeCount; i++) {
+            stamps[large[i]] = stamp;
+            double distance = RayHit.distance(sprites[large[i]], x, y, inverseX, inverseY, best);
+            if (distance >= 0) {
+                best = distance;
+                hit = sprites[large[i]];
+            }
+        }
+        double first = (minX - x) * inverseX, second = (maxX - x) * inverseX;
+        double enter = Math.min(first, second), exit = Math.max(first, second);
+        first = (minY - y) * inverseY;
+        second = (maxY - y) * inverseY;
+        enter = Math.max(0, Math.max(enter, Math.min(first, second)));
+        exit = Math.min(best, Math.min(exit, Math.max(first, second)));
+        if (enter <= exit) {
+            int column = cell(x + dx * enter), row = cell(y + dy * enter);
+            int stepX = dx > 0? 1 : -1, stepY = dy > 0? 1 : -1;
+            double nextX = dx == 0? Double.POSITIVE_INFINITY : ((column + (dx > 0? 1 : 0)) * cellSize - x) * inverseX;
+            double nextY = dy == 0? Double.POSITIVE_INFINITY : ((row + (dy > 0? 1 : 0)) * cellSize - y) * inverseY;
+            double deltaX = Math.abs(cellSize * inverseX), deltaY = Math.abs(cellSize * inverseY);
+            while (true) {
+                int bucket = bucket(column, row);
+                for (int e = starts[bucket]; e < starts[bucket + 1]; e++) {
+                    int i = entries[e];
+                    if (stamps[i] == stamp) continue;
+                    stamps[i] = stamp;
+                    double distance = RayHit.distance(sprites[i], x, y, inverseX, inverseY, best);
+                    if (distance >= 0) {
+                        best = distance;
+                        hit = sprites[i];
+                    }
+                }
+                double boundary = Math.min(nextX, nextY);
+                if (boundary >= Math.min(best, exit)) break;
+                if (nextX < nextY) {
+                    column += stepX;
+                    nextX += deltaX;
+                }
+                else {
+                    row += stepY;
+                    nextY += deltaY;
+                }
+            }
+        }
+        return hit == null? null : new RayHit(hit, best, x + dx * best, y + dy * best);
+    }
+    
+    private int add(int i, int found) {
+        if (stamps[i] == stamp) return found;
+        stamps[i] = stamp;
+        if (found == candidates.length) candidates = Arrays.copyOf(candidates, found * 2);
+        candidates[found] = i;
+        return found + 1;
+    }
+    
+    private void nextStamp() {
+        if (++stamp == 0) {
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+    
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+    
+    private int bucket(int column, int row) {
+        int hash = column * 73856093 ^ row * 19349663;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+    
+    private static double reach(Sprite sprite) {
+        Collider collider = sprite.getCollider();
+        if (collider == null) return 0;
+        double offset = Math.sqrt(collider.getOffsetX() * collider.getOffsetX() + collider.getOffsetY() * collider.getOffsetY());
+        return Math.max(0, offset + collider.getLength() / 2 + collider.getRadius() - Math.min(sprite.width, sprite.height) / 2.0);
+    }
+}
@@ -1,6 +1,7 @@
 package gametools;
 
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 
 /**
  * Used for adding movement and behavior for graphics.
@@ -80,6 +81,9 @@ public class Sprite extends Graphic {
     private double speed = 5, rotationSpeed = 0.05;
     private boolean relational, remove;
     private Area movementArea = Area.UNDEFINED_AREA;
+    private Collider collider;
+    double velocityX, velocityY;
+    boolean pooled;
     
     /**
      * Creates a blank sprite without an image or position.
@@ -161,6 +165,9 @@ public class Sprite extends Graphic {
         rotationSpeed = sprite.rotationSpeed;
         relational = sprite.relational;
         movementArea = sprite.movementArea;
+        collider = sprite.collider;
+        velocityX = sprite.velocityX;
+        velocityY = sprite.velocityY;
     }
     
     /**
@@ -205,6 +212,15 @@ public class Sprite extends Graphic {
         return script;
     }
     
+    /**
+     * Returns the circle or capsule used by the collider collision method.
+     * @return The collider of the sprite or null if it uses its box.
+     */
+    @Override
+    public Collider getCollider() {
+        return collider;
+    }
+    
     /**
      * Returns true if the sprite is to be removed from any groups its in.
      * @return True if the sprite is marked for removal.
@@ -239,6 +255,15 @@ public class Sprite extends Graphic {
         this.relational = relational;
     }
     
+    /**
+     * Attaches a circle or capsule to the sprite, which is used instead of its box by the
+     * collider collision method and the radius queries of groups.
+     * @param collider The shape of the sprite or null to use its box.
+     */
+    public void setCollider(Collider collider) {
+        this.collider = collider;
+    }
+    
     /**
      * Sets a script for the sprite to use.
      * @param script A script to run every time the sprite is updated.
@@ -459,16 +484,84 @@ public class Sprite extends Graphic {
         moveAt(ang);
     }
     
+    /**
+     * Returns the horizontal velocity the sprite was last moved at by a crowd.
+     * @return The horizontal movement of the last crowd update in pixels.
+     */
+    public double getVelocityX() {
+        return velocityX;
+    }
+    
+    /**
+     * Returns the vertical velocity the sprite was last moved at by a crowd.
+     * @return The vertical movement of the last crowd update in pixels.
+     */
+    public double getVelocityY() {
+        return velocityY;
+    }
+    
+    /**
+     * Sets the velocity a crowd steers the sprite from on its next update, such as
+     * zero to stop a sprite that was placed somewhere else.
+     * @param velocityX The horizontal velocity in pixels per update.
+     * @param velocityY The vertical velocity in pixels per update.
+     */
+    public void setVelocity(double velocityX, double velocityY) {
+        this.velocityX = velocityX;
+        this.velocityY = velocityY;
+    }
+    
+    /**
+     * Writes the state of the sprite into a snapshot. Subclasses with their own state
+     * should override this method, call it first and then write their own fields.
+     * @param buffer The buffer to write the state into.
+     */
+    protected void save(ByteBuffer buffer) {
+        buffer.putDouble(x).putDouble(y).putInt(width).putInt(height).putDouble(angle);
+        animation.save(buffer);
+        buffer.putDouble(speed).putDouble(rotationSpeed).putDouble(velocityX).putDouble(velocityY);
+        buffer.put((byte) ((relational? 1 : 0) | (remove? 2 : 0)));
+    }
+    
+    /**
+     * Reads the state of the sprite from a snapshot. Subclasses that override the save
+     * method should override this method, call it first and then read their own fields
+     * in the same order they were written.
+     * @param buffer The buffer to read the state from.
+     */
+    protected void load(ByteBuffer buffer) {
+        x = buffer.getDouble();
+        y = buffer.getDouble();
+        width = buffer.getInt();
+        height = buffer.getInt();
+        angle = buffer.getDouble();
+        animation.load(buffer);
+        speed = buffer.getDouble();
+        rotationSpeed = buffer.getDouble();
+        velocityX = buffer.getDouble();
+        velocityY = buffer.getDouble();
+        int flags = buffer.get();
+        relational = (flags & 1) != 0;
+        remove = (flags & 2) != 0;
+    }
+    
     @Override
     public void draw(UpdateType type) {
         if (type.update()) {
             update();
-            if (this.script != Script.UNDEFINED_SCRIPT) script.update();
-            if (movementArea != Area.UNDEFINED_AREA) {
-                if (!isWithin(movementArea, Collision.INSIDE_X)) x = (x <= 0)? 0 : movementArea.width - width;
-                if (!isWithin(movementArea, Collision.INSIDE_Y)) y = (y <= 0)? 0 : movementArea.height - height;
-            }
+            if (this.script != Script.UNDEFINED_SCRIPT && script.scheduler == null) script.tick(Game.getTick());
+            confine();
         }
         super.draw(type);
     }
+    
+    /**
+     * Moves the sprite back inside its movement area if it left it.
+     */
+    void confine() {
+        if (movementArea != Area.UNDEFINED_AREA) {
+            if (!isWithin(movementArea, Collision.INSIDE_X)) x = (x <= 0)? 0 : movementArea.width - width;
+            if (!isWithin(movementArea, Collision.INSIDE_Y)) y = (y <= 0)? 0 : movementArea.height - height;
+        }
+    }
 }
\ No newline at end of file
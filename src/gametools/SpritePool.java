@@ -0,0 +1,64 @@
+package gametools;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps sprites that were removed from a group so they can be reused instead of
+ * creating new ones, and counts how often a sprite could be reused.
+ */
+final class SpritePool {
+    private final Group.Factory factory;
+    private final ArrayDeque<Sprite> sprites = new ArrayDeque<>();
+    private int capacity;
+    private long hits, misses;
+    
+    SpritePool(Group.Factory factory, int capacity) {
+        if (factory == null) throw new IllegalArgumentException("factory must not be null");
+        this.factory = factory;
+        this.capacity = Math.max(capacity, 0);
+    }
+    
+    Sprite obtain() {
+        Sprite sprite = sprites.pollLast();
+        if (sprite == null) {
+            misses++;
+            return factory.create();
+        }
+        hits++;
+        sprite.pooled = false;
+        sprite.remove(false);
+        sprite.setVelocity(0, 0);
+        factory.reset(sprite);
+        return sprite;
+    }
+    
+    /**
+     * Keeps the sprite for reuse unless the pool is full or already holds it.
+     */
+    void release(Sprite sprite) {
+        if (sprite == null || sprite.pooled || sprites.size() >= capacity) return;
+        sprite.pooled = true;
+        sprites.addLast(sprite);
+    }
+    
+    int size() {
+        return sprites.size();
+    }
+    
+    int getCapacity() {
+        return capacity;
+    }
+    
+    void setCapacity(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        while (sprites.size() > this.capacity) sprites.pollFirst().pooled = false;
+    }
+    
+    long getHits() {
+        return hits;
+    }
+    
+    long getMisses() {
+        return misses;
+    }
+}
@@ -0,0 +1,170 @@
+package gametools;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A script for long running work such as pathfinding, level generation or saving that is
+ * written as plain blocking code. The task runs on its own thread, a virtual thread when
+ * the java version supports them, so thousands of tasks can be active at once. The task can
+ * wait for the next update of the script with the await next tick method, and its result is
+ * handed back on the game thread during the update of the script.<br>
+ * <b>Note</b>: The task runs alongside the game, so it should only read shared game state
+ * right after waiting for a tick and only change it through the finish method.
+ * @param <T> The type of result the task produces.
+ */
+public abstract class TaskScript<T> extends Script {
+    private static final int NEW = 0, RUNNING = 1, DONE = 2, FAILED = 3, JOINED = 4;
+    private static ExecutorService executor;
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    private volatile Thread thread;
+    private volatile long updates;
+    private long tick = Long.MIN_VALUE;
+    private volatile boolean cancelled;
+    private volatile T result;
+    private volatile Exception error;
+    
+    /**
+     * The work of the task, which runs on a separate thread and may block.
+     * @return The result that is passed to the finish method on the game thread.
+     * @throws Exception If the task failed, which is passed to the failed method instead.
+     */
+    protected abstract T execute() throws Exception;
+    
+    /**
+     * Runs on the game thread during the update of the script after the task completes.
+     * @param result The result of the task.
+     */
+    protected void finish(T result) {}
+    
+    /**
+     * Runs on the game thread during the update of the script if the task threw an exception.
+     * Errors such as running out of memory are passed wrapped in an execution exception.
+     * By default the error is printed.
+     * @param ex The exception thrown by the task.
+     */
+    protected void failed(Exception ex) {
+        System.err.println("There were errors running the task '" + getClass().getName() + "':");
+        System.err.println(ex.toString());
+    }
+    
+    /**
+     * Blocks the task until the next update of the script, handing control back to the game
+     * loop. The task continues on the next frame, or on the next interval if the script has one,
+     * and a script shared by several sprites only counts one update per frame.<br>
+     * <b>Note</b>: This can only be called from within the execute method.
+     * @throws InterruptedException If the task was cancelled while waiting.
+     */
+    protected final void awaitNextTick() throws InterruptedException {
+        if (Thread.currentThread() != thread) throw new IllegalStateException("awaitNextTick called outside of the task");
+        long target = updates + 1;
+        while (updates < target) {
+            LockSupport.park(this);
+            if (Thread.interrupted() || cancelled) throw new InterruptedException();
+        }
+    }
+    
+    /**
+     * Starts the task on the first update, wakes the task if it is waiting for a tick and
+     * hands the result back once it is done.
+     */
+    @Override
+    public final void update() {
+        if (state.get() == NEW) start();
+        if (tick != Game.getTick()) {
+            tick = Game.getTick();
+            updates++;
+            Thread waiting = thread;
+            if (waiting != null) LockSupport.unpark(waiting);
+        }
+        int current = state.get();
+        if (current == DONE && state.compareAndSet(DONE, JOINED) && !cancelled) finish(result);
+        else if (current == FAILED && state.compareAndSet(FAILED, JOINED) && !cancelled) failed(error);
+    }
+    
+    /**
+     * Starts the task if it has not started yet, instead of waiting for the first update.
+     */
+    public void start() {
+        if (!state.compareAndSet(NEW, RUNNING)) return;
+        executor().execute(this::run);
+    }
+    
+    /**
+     * Stops a running task by interrupting it. The finish and failed methods are not called
+     * for a cancelled task.
+     */
+    public void cancel() {
+        cancelled = true;
+        Thread running = thread;
+        if (running != null) running.interrupt();
+    }
+    
+    /**
+     * Returns true if the task was started and has not been handed back to the game yet.
+     * @return True if the task is running or waiting for the next update.
+     */
+    public boolean isRunning() {
+        int current = state.get();
+        return current != NEW && current != JOINED;
+    }
+    
+    /**
+     * Returns true once the result of the task was handed back on the game thread.
+     * @return True if the task is complete.
+     */
+    public boolean isDone() {
+        return state.get() == JOINED;
+    }
+    
+    /**
+     * Returns true if the task was cancelled.
+     * @return True if cancel was called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * Returns the result of the task once it is done.
+     * @return The result of the task or null if it is not done or failed.
+     */
+    public T getResult() {
+        return isDone()? result : null;
+    }
+    
+    private void run() {
+        thread = Thread.currentThread();
+        try {
+            if (!cancelled) result = execute();
+            state.set(DONE);
+        }
+        catch (Throwable ex) {
+            error = ex instanceof Exception? (Exception) ex : new ExecutionException(ex);
+            state.set(FAILED);
+        }
+        finally {
+            thread = null;
+            Thread.interrupted();
+        }
+    }
+    
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            try {
+                executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            }
+            catch (Exception | LinkageError ex) {
+                executor = Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(task, "GameTools Task");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,353 @@
+package gametools;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A layer of tiles laid out in a grid, drawn from a tileset such as one loaded with
+ * the load sprite sheet method. Only the tiles visible on the screen are drawn, and
+ * blocks of tiles are prerendered into cached images the first time they are visible
+ * so a whole block is drawn at once. Only the most recently visible blocks are kept
+ * in the cache. Several tile maps with different scroll factors
+ * can be drawn on top of each other to create a parallax effect.
+ */
+public class TileMap {
+    /**
+     * The tile index of an empty cell, which is not drawn.
+     */
+    public static final int EMPTY = -1;
+    /**
+     * The width and height of a cached block of tiles, in tiles.
+     */
+    public static final int CHUNK_SIZE = 16;
+    private final BufferedImage[] tileset;
+    private final int columns, rows, tileWidth, tileHeight, chunkColumns, chunkRows;
+    private int[] tiles;
+    private final ChunkCache chunks = new ChunkCache();
+    private final Runnable painting = this::paint;
+    private final Rectangle visible = new Rectangle();
+    private BufferedImage spare;
+    private double x, y, scroll = 1;
+    private int cacheLimit = 256;
+    private boolean caching = true, changed = true;
+    
+    /**
+     * Creates an empty tile map.
+     * @param tileset The images of the tiles, which should all have the same size.
+     * @param columns The amount of tiles in every row.
+     * @param rows The amount of tiles in every column.
+     */
+    public TileMap(BufferedImage[] tileset, int columns, int rows) {
+        this(tileset, columns, rows, null);
+    }
+    
+    /**
+     * Creates a tile map from an array of tile indices.
+     * @param tileset The images of the tiles, which should all have the same size.
+     * @param columns The amount of tiles in every row.
+     * @param rows The amount of tiles in every column.
+     * @param tiles The index in the tileset of every tile, row by row from the top left.
+     */
+    public TileMap(BufferedImage[] tileset, int columns, int rows, int[] tiles) {
+        this(tileset, columns, rows, tiles, true);
+    }
+    
+    TileMap(BufferedImage[] tileset, int columns, int rows, int[] tiles, boolean allocate) {
+        this.tileset = tileset.clone();
+        this.columns = Math.max(columns, 1);
+        this.rows = Math.max(rows, 1);
+        tileWidth = tileset[0].getWidth();
+        tileHeight = tileset[0].getHeight();
+        chunkColumns = (this.columns + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunkRows = (this.rows + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (!allocate) return;
+        if (tiles == null) {
+            this.tiles = new int[this.columns * this.rows];
+            Arrays.fill(this.tiles, EMPTY);
+        }
+        else setTiles(tiles);
+    }
+    
+    /**
+     * Returns the amount of tiles in every row.
+     * @return The width of the map in tiles.
+     */
+    public int getColumns() {
+        return columns;
+    }
+    
+    /**
+     * Returns the amount of tiles in every column.
+     * @return The height of the map in tiles.
+     */
+    public int getRows() {
+        return rows;
+    }
+    
+    /**
+     * Returns the width of a single tile.
+     * @return The width of a tile in pixels.
+     */
+    public int getTileWidth() {
+        return tileWidth;
+    }
+    
+    /**
+     * Returns the height of a single tile.
+     * @return The height of a tile in pixels.
+     */
+    public int getTileHeight() {
+        return tileHeight;
+    }
+    
+    /**
+     * Returns the area the whole map covers.
+     * @return A new area with the position and size of the map in pixels.
+     */
+    public Area getArea() {
+        return new Area(x, y, columns * tileWidth, rows * tileHeight);
+    }
+    
+    /**
+     * Returns the x coordinate of the left edge of the map.
+     * @return The x of the map.
+     */
+    public double getX() {
+        return x;
+    }
+    
+    /**
+     * Returns the y coordinate of the top edge of the map.
+     * @return The y of the map.
+     */
+    public double getY() {
+        return y;
+    }
+    
+    /**
+     * Returns how fast the map scrolls compared to the camera.
+     * @return The scroll factor of the map.
+     */
+    public double getScroll() {
+        return scroll;
+    }
+    
+    /**
+     * Returns the tile at the specified cell.
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @return The index of the tile in the tileset or the empty constant if the cell is empty or outside the map.
+     */
+    public int get(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) return EMPTY;
+        return tiles[row * columns + column];
+    }
+    
+    /**
+     * Returns the tile at the specified position in the game.
+     * @param x The x of the position.
+     * @param y The y of the position.
+     * @return The index of the tile in the tileset or the empty constant if the cell is empty or outside the map.
+     */
+    public int getAt(double x, double y) {
+        return get(getColumn(x), getRow(y));
+    }
+    
+    /**
+     * Returns the column that contains the x coordinate.
+     * @param x The x coordinate in the game.
+     * @return The column, which can be outside the map.
+     */
+    public int getColumn(double x) {
+        return (int) Math.floor((x - this.x) / tileWidth);
+    }
+    
+    /**
+     * Returns the row that contains the y coordinate.
+     * @param y The y coordinate in the game.
+     * @return The row, which can be outside the map.
+     */
+    public int getRow(double y) {
+        return (int) Math.floor((y - this.y) / tileHeight);
+    }
+    
+    /**
+     * Changes the tile at the specified cell.
+     * @param column The column of the cell.
+     * @param row The row of the cell.
+     * @param tile The index of the tile in the tileset or the empty constant.
+     */
+    public void set(int column, int row, int tile) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) return;
+        tiles[row * columns + column] = tile;
+        invalidate(column, row);
+    }
+    
+    /**
+     * Replaces all tiles of the map.
+     * @param tiles The index in the tileset of every tile, row by row from the top left.
+     */
+    public void setTiles(int[] tiles) {
+        if (tiles.length != columns * rows) throw new IllegalArgumentException("Expected " + columns * rows + " tiles but got " + tiles.length);
+        this.tiles = tiles.clone();
+        clearCache();
+        changed = true;
+    }
+    
+    /**
+     * Moves the top left corner of the map to the specified position in the game.
+     * @param x The new x of the map.
+     * @param y The new y of the map.
+     */
+    public void setPosition(double x, double y) {
+        this.x = x;
+        this.y = y;
+        changed = true;
+    }
+    
+    /**
+     * Sets how fast the map scrolls compared to the camera. Layers further away
+     * should scroll slower than the layers in front of them.
+     * @param scroll The scroll factor, where one moves with the sprites and zero stays still on the screen.
+     */
+    public void setScroll(double scroll) {
+        this.scroll = scroll;
+        changed = true;
+    }
+    
+    /**
+     * Sets whether blocks of tiles are prerendered into images. Caching uses more memory,
+     * but is much faster for maps where the tiles rarely change.
+     * @param caching True to cache blocks of tiles, false to draw every tile on its own.
+     */
+    public void setCaching(boolean caching) {
+        this.caching = caching;
+        if (!caching) clearCache();
+    }
+    
+    /**
+     * Sets the most prerendered blocks of tiles kept in memory. When the limit is reached
+     * the block that was visible the longest time ago is discarded.
+     * @param limit The most blocks to cache.
+     */
+    public void setCacheLimit(int limit) {
+        cacheLimit = Math.max(limit, 1);
+        while (chunks.size() > cacheLimit) chunks.evict();
+    }
+    
+    /**
+     * Discards all prerendered blocks of tiles, which are rebuilt when they are visible again.
+     */
+    public void clearCache() {
+        chunks.clear();
+    }
+    
+    /**
+     * Draws the tiles of the map that are visible on the screen. With dirty rendering the
+     * map is only redrawn where it moved, where its tiles changed or where other objects changed.
+     */
+    public void draw() {
+        DirtyRegions dirty = Game.dirtyRegions();
+        if (dirty == null) paint();
+        else {
+            AffineTransform camera = Game.painter().getTransform();
+            double left = x + camera.getTranslateX() * scroll, top = y + camera.getTranslateY() * scroll;
+            int minX = (int) Math.max(Math.floor(left) - 1, 0), minY = (int) Math.max(Math.floor(top) - 1, 0);
+            int maxX = (int) Math.min(Math.ceil(left + (double) columns * tileWidth) + 1, Game.getWidth());
+            int maxY = (int) Math.min(Math.ceil(top + (double) rows * tileHeight) + 1, Game.getHeight());
+            visible.setBounds(minX, minY, Math.max(maxX - minX, 0), Math.max(maxY - minY, 0));
+            dirty.submit(this, painting, camera, visible, changed);
+            changed = false;
+        }
+    }
+    
+    /**
+     * Marks the cached block containing the cell to be rendered again.
+     */
+    void invalidate(int column, int row) {
+        BufferedImage chunk = chunks.remove((row / CHUNK_SIZE) * chunkColumns + column / CHUNK_SIZE);
+        if (chunk != null) spare = chunk;
+        changed = true;
+    }
+    
+    int getChunkColumns() {
+        return chunkColumns;
+    }
+    
+    int getChunkRows() {
+        return chunkRows;
+    }
+    
+    /**
+     * Runs before the visible blocks are drawn with the range of blocks that are visible.
+     */
+    void prepare(int firstColumn, int firstRow, int lastColumn, int lastRow) {}
+    
+    private void paint() {
+        Graphics2D painter = Game.painter();
+        AffineTransform camera = painter.getTransform();
+        double left = x + camera.getTranslateX() * scroll, top = y + camera.getTranslateY() * scroll;
+        int width = Game.getWidth(), height = Game.getHeight();
+        painter.setTransform(new AffineTransform());
+        if (caching) {
+            int chunkWidth = CHUNK_SIZE * tileWidth, chunkHeight = CHUNK_SIZE * tileHeight;
+            int firstColumn = Math.max(0, (int) Math.floor(-left / chunkWidth));
+            int firstRow = Math.max(0, (int) Math.floor(-top / chunkHeight));
+            int lastColumn = Math.min(chunkColumns - 1, (int) Math.floor((width - left) / chunkWidth));
+            int lastRow = Math.min(chunkRows - 1, (int) Math.floor((height - top) / chunkHeight));
+            prepare(firstColumn, firstRow, lastColumn, lastRow);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    BufferedImage chunk = chunk(column, row);
+                    painter.drawImage(chunk, (int) Math.round(left + column * chunkWidth), (int) Math.round(top + row * chunkHeight), null);
+                }
+            }
+        }
+        else {
+            int firstColumn = Math.max(0, (int) Math.floor(-left / tileWidth));
+            int firstRow = Math.max(0, (int) Math.floor(-top / tileHeight));
+            int lastColumn = Math.min(columns - 1, (int) Math.floor((width - left) / tileWidth));
+            int lastRow = Math.min(rows - 1, (int) Math.floor((height - top) / tileHeight));
+            prepare(firstColumn / CHUNK_SIZE, firstRow / CHUNK_SIZE, lastColumn / CHUNK_SIZE, lastRow / CHUNK_SIZE);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int tile = get(column, row);
+                    if (tile < 0 || tile >= tileset.length) continue;
+                    painter.drawImage(tileset[tile], (int) Math.round(left + column * tileWidth), (int) Math.round(top + row * tileHeight), null);
+                }
+            }
+        }
+        painter.setTransform(camera);
+    }
+    
+    private BufferedImage chunk(int column, int row) {
+        int index = row * chunkColumns + column;
+        BufferedImage chunk = chunks.get(index);
+        if (chunk != null) {
+            Metrics.CHUNK_CACHE_HITS.increment();
+            return chunk;
+        }
+        Metrics.CHUNK_CACHE_MISSES.increment();
+        if (chunks.size() >= cacheLimit) spare = chunks.evict();
+        chunk = spare;
+        spare = null;
+        if (chunk == null) chunk = new BufferedImage(CHUNK_SIZE * tileWidth, CHUNK_SIZE * tileHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D painter = chunk.createGraphics();
+        painter.setComposite(AlphaComposite.Clear);
+        painter.fillRect(0, 0, chunk.getWidth(), chunk.getHeight());
+        painter.setComposite(AlphaComposite.SrcOver);
+        for (int y = 0; y < CHUNK_SIZE; y++) {
+            for (int x = 0; x < CHUNK_SIZE; x++) {
+                int tile = get(column * CHUNK_SIZE + x, row * CHUNK_SIZE + y);
+                if (tile >= 0 && tile < tileset.length) painter.drawImage(tileset[tile], x * tileWidth, y * tileHeight, null);
+            }
+        }
+        painter.dispose();
+        chunks.put(index, chunk);
+        return chunk;
+    }
+}
@@ -8,9 +8,15 @@ import java.awt.GradientPaint;
 import java.awt.Graphics2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.imageio.ImageIO;
 import javax.swing.JOptionPane;
 
@@ -30,7 +36,13 @@ public class Tools {
      * A class situated in the root of the project to help with creating relative paths.
      */
     private static Class root;
-    private static final Random rand = new Random();
+    private static long seed = new Random().nextLong();
+    private static RandomSource source = RandomSource.create(seed), splitter = source.split();
+    private static final AtomicReference<Thread> owner = new AtomicReference<>();
+    private static volatile int generation;
+    private static final ThreadLocal<RandomSource> threadRandom = new ThreadLocal<>();
+    private static final Map<BufferedImage, String> assets = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Map<String, WeakReference<BufferedImage>> loaded = new HashMap<>();
     
     /**
      * Initializes the tools and sets up the root directory.
@@ -44,6 +56,110 @@ public class Tools {
         return root;
     }
     
+    static RandomSource getRandomSource() {
+        return source;
+    }
+    
+    /**
+     * Returns the key an image was loaded with, which is the path for images and the path,
+     * size and index separated by number signs for sprite sheet images.
+     */
+    static String getAssetKey(BufferedImage image) {
+        return assets.get(image);
+    }
+    
+    /**
+     * Returns the image for a key returned by the get asset key method. An image that was
+     * already loaded with the key and is still in use is shared instead of loaded again,
+     * and a sprite sheet is loaded as a whole so its other images are found afterwards.
+     */
+    static BufferedImage loadAsset(String key) {
+        synchronized (loaded) {
+            WeakReference<BufferedImage> reference = loaded.get(key);
+            BufferedImage image = reference == null? null : reference.get();
+            if (image != null) return image;
+            loaded.remove(key);
+        }
+        String[] parts = key.split("#");
+        BufferedImage image;
+        if (parts.length != 4) image = loadImage(key);
+        else {
+            BufferedImage[] sheet = loadSpriteSheet(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            int index = Integer.parseInt(parts[3]);
+            image = index < sheet.length? sheet[index] : UNDEFINED_IMAGE;
+        }
+        if (image == UNDEFINED_IMAGE) synchronized (loaded) {
+            loaded.put(key, new WeakReference<>(image));
+        }
+        return image;
+    }
+    
+    /**
+     * Stores the key an image was loaded with so the image and the key can be found from each other.
+     */
+    static void remember(BufferedImage image, String key) {
+        assets.put(image, key);
+        synchronized (loaded) {
+            loaded.put(key, new WeakReference<>(image));
+        }
+    }
+    
+    /**
+     * Returns the seed the random methods were last started from.
+     * @return The seed of the random number generator.
+     */
+    public static long getSeed() {
+        return seed;
+    }
+    
+    /**
+     * Restarts the random methods from the specified seed, so the same sequence
+     * of random values is generated every time the same seed is used. The thread
+     * that calls this method uses the seeded source directly, while every other
+     * thread gets its own source split from it.
+     * @param seed The new seed for the random number generator.
+     */
+    public static void setSeed(long seed) {
+        Tools.seed = seed;
+        setRandomSource(RandomSource.create(seed));
+    }
+    
+    /**
+     * Replaces the random number generator used by all the random methods with a custom one.
+     * The thread that calls this method uses the source directly, while every other thread
+     * gets its own source split from it.
+     * @param source The new random source.
+     */
+    public static synchronized void setRandomSource(RandomSource source) {
+        Tools.source = source;
+        splitter = source.split();
+        generation++;
+        owner.set(Thread.currentThread());
+    }
+    
+    /**
+     * Returns the random source for the current thread. The source should not be
+     * passed to other threads, instead split it or call this method from the other thread.
+     * @return The random source all the random methods of the current thread use.
+     */
+    public static RandomSource random() {
+        Thread current = Thread.currentThread(), elected = owner.get();
+        if (elected == null) {
+            owner.compareAndSet(null, current);
+            elected = owner.get();
+        }
+        if (current == elected) return source;
+        RandomSource local = threadRandom.get();
+        if (local == null || local.getGeneration() != generation) {
+            synchronized (Tools.class) {
+                local = splitter.split();
+                local.setGeneration(generation);
+            }
+            threadRandom.set(local);
+        }
+        return local;
+    }
+    
     /**
      * Converts negatives and angles past a full rotation into a more readable format.
      * @param ang The angle to fix.
@@ -62,14 +178,18 @@ public class Tools {
      */
     public static BufferedImage loadImage(String path) {
         BufferedImage image;
+        Object event = Recorder.beginAssetLoad();
         try {
             image = ImageIO.read(root.getResourceAsStream(path));
+            remember(image, path);
+            Metrics.IMAGES_LOADED.increment();
         }
         catch (Exception ex) {
             System.err.println("There were errors loading the image '" + path + "':");
             System.err.println(ex.toString());
             image = UNDEFINED_IMAGE;
         }
+        Recorder.endAssetLoad(event, path, "image", image != UNDEFINED_IMAGE);
         return image;
     }
     
@@ -138,6 +258,7 @@ public class Tools {
                         int width = (outerX > sheet.getWidth())? sheet.getWidth() - x * size.width : size.width;
                         int height = (outerY > sheet.getHeight())? sheet.getHeight() - y * size.height : size.height;
                         sprites[total] = sheet.getSubimage(x * size.width, y * size.height, width, height);
+                        remember(sprites[total], path + "#" + size.width + "#" + size.height + "#" + total);
                         total++;
                     }
                 }
@@ -187,6 +308,7 @@ public class Tools {
      * @return A position with random coordinates.
      */
     public static Position randomPosition() {
+        RandomSource rand = random();
         return new Position(rand.nextInt(), rand.nextInt());
     }
     
@@ -215,9 +337,25 @@ public class Tools {
      * @return A random position within the passed in area.
      */
     public static Position randomPosition(Area area) {
-        double x = rand.nextInt((int) area.width) + area.x;
-        double y = rand.nextInt((int) area.height) + area.y;
-        return new Position(x, y);
+        return random().nextPosition(area);
+    }
+    
+    /**
+     * Generates a random x coordinate within the passed in area without creating a position.
+     * @param area The area within which the coordinate will be.
+     * @return A random x coordinate inside the area.
+     */
+    public static double randomX(Area area) {
+        return random().nextX(area);
+    }
+    
+    /**
+     * Generates a random y coordinate within the passed in area without creating a position.
+     * @param area The area within which the coordinate will be.
+     * @return A random y coordinate inside the area.
+     */
+    public static double randomY(Area area) {
+        return random().nextY(area);
     }
     
     /**
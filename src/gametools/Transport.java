@@ -0,0 +1,25 @@
+package gametools;
+
+/**
+ * Abstract class for sending packets between the players of an online game, such as
+ * over a UDP socket. Packets may arrive late, out of order or not at all, so the
+ * classes using a transport resend anything that matters until it is acknowledged.
+ */
+public abstract class Transport {
+    /**
+     * Sends a packet to the other end without waiting for it to arrive.
+     * @param packet The bytes of the packet.
+     */
+    public abstract void send(byte[] packet);
+    
+    /**
+     * Returns the next packet that arrived from the other end without waiting.
+     * @return The bytes of the packet or null if no packet has arrived.
+     */
+    public abstract byte[] receive();
+    
+    /**
+     * Releases the connection. By default this does nothing.
+     */
+    public void close() {}
+}
@@ -2,10 +2,12 @@ package gametools.gravity;
 
 import gametools.Game;
 import gametools.Group;
+import gametools.TileMap;
 
 public abstract class GravityGame extends Game {
     private static final Group platforms = new Group(), objects = new Group();
     private static double defaultMultiplier = 1, defaultTerminalVelocity = 25, scanDistance = 4;
+    private static TileMap platformMap;
     
     public static Group platforms() {
         return platforms;
@@ -15,6 +17,14 @@ public abstract class GravityGame extends Game {
         return objects;
     }
     
+    /**
+     * Returns the tile map masses land on in addition to the platform sprites.
+     * @return The platform tile map or null if there is none.
+     */
+    public static TileMap getPlatformMap() {
+        return platformMap;
+    }
+    
     public static double getDefaultGravity() {
         return defaultMultiplier * 100;
     }
@@ -30,6 +40,16 @@ public abstract class GravityGame extends Game {
     public static void setDefaultTerminalVelocity(double velocity) {
         defaultTerminalVelocity = velocity;
     }
+    
+    /**
+     * Sets a tile map whose non empty tiles act as platforms. Collision is checked
+     * directly against the tiles, so a mapped tile map only reads the rows of tiles
+     * around the falling masses.
+     * @param map The tile map to use for platforms or null to only use the platform sprites.
+     */
+    public static void setPlatformMap(TileMap map) {
+        platformMap = map;
+    }
 
     /**
      * Returns the amount of pixels traveled before scanning for collision.
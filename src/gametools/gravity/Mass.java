@@ -5,8 +5,10 @@ import gametools.Area;
 import gametools.Graphic;
 import gametools.Position;
 import gametools.Sprite;
+import gametools.TileMap;
 import java.awt.Dimension;
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
 
 public class Mass extends Sprite {
     private double multiplier, gravity, terminalVelocity, boost;
@@ -124,6 +126,42 @@ public class Mass extends Sprite {
         return onGround;
     }
     
+    @Override
+    protected void save(ByteBuffer buffer) {
+        super.save(buffer);
+        buffer.putDouble(multiplier).putDouble(gravity).putDouble(terminalVelocity).putDouble(boost);
+        buffer.put((byte) (onGround? 1 : 0));
+    }
+    
+    @Override
+    protected void load(ByteBuffer buffer) {
+        super.load(buffer);
+        multiplier = buffer.getDouble();
+        gravity = buffer.getDouble();
+        terminalVelocity = buffer.getDouble();
+        boost = buffer.getDouble();
+        onGround = buffer.get() != 0;
+    }
+    
+    private boolean landOn(TileMap map, int height) {
+        double bottom = y + getHeight();
+        int first = map.getColumn(x), last = map.getColumn(x + getWidth() - 1);
+        for (int row = map.getRow(bottom - height * 2); row <= map.getRow(bottom); row++) {
+            double top = map.getY() + row * map.getTileHeight();
+            if (top >= bottom || top + height <= bottom - height) continue;
+            for (int column = first; column <= last; column++) {
+                if (map.get(column, row) != TileMap.EMPTY) {
+                    y = top - getHeight();
+                    gravity = 0;
+                    boost = 0;
+                    onGround = true;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
     @Override
     public void draw(UpdateType type) {
         if (type.update()) super.draw(UpdateType.UPDATE_ONLY);
@@ -150,6 +188,8 @@ public class Mass extends Sprite {
                             break loop;
                         }
                     }
+                    TileMap map = GravityGame.getPlatformMap();
+                    if (map != null && landOn(map, height)) break;
                 }
             }
             else move(Direction.NORTH, boost - gravity);
@@ -1,4 +1,23 @@
 /**
  * A lightweight and simple to use library for creating 2D games in Java.
+ * <h2>Flight recorder events</h2>
+ * On runtimes that have the flight recorder the engine emits the events below, which can be
+ * recorded by starting the game with {@code -XX:StartFlightRecording=filename=game.jfr} and
+ * opened in tools such as JDK Mission Control to line up slow frames with garbage collection
+ * pauses and other JVM events. All events are in the GameTools category, and events with a
+ * threshold are only recorded when they take at least that long. The thresholds can be changed
+ * in the settings of a recording like those of any other event.
+ * <table border="1">
+ * <caption>Events of the engine</caption>
+ * <tr><th>Name</th><th>Fields</th><th>Default threshold</th><th>Stack trace</th><th>Covers</th></tr>
+ * <tr><td>gametools.Frame</td><td>tick, targetFps</td><td>None</td><td>No</td>
+ * <td>A frame of the game loop, from reading the input until the frame is presented</td></tr>
+ * <tr><td>gametools.Run</td><td>tick</td><td>8 ms</td><td>No</td>
+ * <td>A call to the run method of the game</td></tr>
+ * <tr><td>gametools.AssetLoad</td><td>path, type, loaded</td><td>5 ms</td><td>Yes</td>
+ * <td>Loading an image or sound</td></tr>
+ * <tr><td>gametools.CollisionQuery</td><td>sprites, targets, hits</td><td>1 ms</td><td>No</td>
+ * <td>A collision query between a group and a list of sprites</td></tr>
+ * </table>
  */
-package gametools;
\ No newline at end of file
+package gametools;
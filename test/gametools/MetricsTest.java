@@ -0,0 +1,61 @@
+package gametools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class MetricsTest {
+    @After
+    public void removeGauges() {
+        Metrics.removeGauge("quote\"back\\slash");
+        Metrics.removeGauge("line\nbreak");
+        Metrics.removeGauge("test.nan");
+        Metrics.removeGauge("test.infinite");
+        Metrics.removeGauge("test.failing");
+    }
+    
+    @Test
+    public void stopsDumpingWhenTheFileCannotBeWritten() throws InterruptedException {
+        Assume.assumeTrue(new File("/dev/full").canWrite());
+        assertTrue(Metrics.startDump("/dev/full", 0.01));
+        for (int i = 0; i < 500 && Metrics.isDumping(); i++) Thread.sleep(10);
+        assertFalse(Metrics.isDumping());
+    }
+    
+    @Test
+    public void escapesNames() {
+        Metrics.gauge("quote\"back\\slash", () -> 1);
+        Metrics.gauge("line\nbreak", () -> 2);
+        String json = Metrics.toJson();
+        assertTrue(json, json.contains(",\"quote\\\"back\\\\slash\":1"));
+        assertTrue(json, json.contains(",\"line\\u000abreak\":2"));
+    }
+    
+    @Test
+    public void writesNullForMissingNumbers() {
+        Metrics.gauge("test.nan", () -> Double.NaN);
+        Metrics.gauge("test.infinite", () -> Double.POSITIVE_INFINITY);
+        Metrics.gauge("test.failing", () -> {
+            throw new IllegalStateException();
+        });
+        String json = Metrics.toJson();
+        assertTrue(json, json.contains(",\"test.nan\":null"));
+        assertTrue(json, json.contains(",\"test.infinite\":null"));
+        assertTrue(json, json.contains(",\"test.failing\":null"));
+        assertTrue(json, !json.contains("NaN") && !json.contains("Infinity"));
+    }
+    
+    @Test
+    public void writesCountersAsWholeNumbers() {
+        Metrics.counter("test.counter").add(3);
+        String json = Metrics.toJson();
+        assertTrue(json, json.startsWith("{\"time\":") && json.endsWith("}"));
+        assertTrue(json, json.contains(",\"test.counter\":3,") || json.contains(",\"test.counter\":3}"));
+        assertEquals(3, Metrics.get("test.counter"), 0);
+    }
+}
@@ -0,0 +1,54 @@
+package gametools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.awt.image.BufferedImage;
+import org.junit.Test;
+
+public class SnapshotTest {
+    @Test
+    public void bytesKeepTheScaleOfLoadedFrames() {
+        BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+        Tools.remember(image, "/snapshot-test.png");
+        Sprite sprite = restore(scaled(image));
+        assertSame(image, sprite.getAnimation().getOriginalFrames()[0]);
+        assertScaled(sprite);
+    }
+    
+    @Test
+    public void bytesKeepTheSizeOfFramesThatCannotBeLoaded() {
+        Sprite sprite = restore(scaled(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB)));
+        assertSame(Tools.UNDEFINED_IMAGE, sprite.getAnimation().getOriginalFrames()[0]);
+        assertScaled(sprite);
+    }
+    
+    private static Sprite scaled(BufferedImage image) {
+        Sprite sprite = new Sprite(new Animation(image));
+        sprite.setDimensions(30, 20);
+        sprite.setPosition(5, 7);
+        return sprite;
+    }
+    
+    private static Sprite restore(Sprite sprite) {
+        Group group = new Group();
+        group.add(sprite);
+        Group restored = new Group();
+        Snapshot.fromBytes(Snapshot.capture(group).toBytes()).restore(restored);
+        assertEquals(1, restored.size());
+        assertNotSame(sprite, restored.get(0));
+        return restored.get(0);
+    }
+    
+    private static void assertScaled(Sprite sprite) {
+        assertEquals(30, sprite.getWidth());
+        assertEquals(20, sprite.getHeight());
+        assertEquals(30, sprite.getAnimation().getWidth());
+        assertEquals(20, sprite.getAnimation().getHeight());
+        assertEquals(30, sprite.getImage().getWidth());
+        assertEquals(20, sprite.getImage().getHeight());
+        assertEquals(5, sprite.getX(), 0);
+        assertEquals(7, sprite.getY(), 0);
+    }
+}
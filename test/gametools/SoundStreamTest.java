@@ -0,0 +1,253 @@
+package gametools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.FloatControl;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.SourceDataLine;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SoundStreamTest {
+    private static final int BUFFERS = 4, BUFFER_SIZE = 1 << 15, SECONDS = 120;
+    private static final AudioFormat FORMAT = new AudioFormat(44100, 16, 2, true, false);
+    private final long frames = (long) FORMAT.getFrameRate() * SECONDS;
+    private File clip;
+    
+    @Before
+    public void writeClip() throws Exception {
+        clip = new File(new File(SoundStreamTest.class.getResource("SoundStreamTest.class").toURI()).getParentFile(), "stream-test.wav");
+        InputStream samples = new InputStream() {
+            private long position;
+            
+            @Override
+            public int read() {
+                return position < frames * FORMAT.getFrameSize()? (int) (position++ * 31 & 0xFF) : -1;
+            }
+        };
+        AudioSystem.write(new AudioInputStream(samples, FORMAT, frames), AudioFileFormat.Type.WAVE, clip);
+        Tools.initialize(SoundStreamTest.class);
+    }
+    
+    @After
+    public void deleteClip() {
+        clip.delete();
+    }
+    
+    @Test
+    public void streamsWithinTheBuffers() throws Exception {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        CountingLine line = new CountingLine();
+        SoundStream stream = new SoundStream(clip.getName(), line);
+        stream.start(false);
+        assertTrue("The clip did not finish streaming", line.drained.await(60, TimeUnit.SECONDS));
+        stream.stop();
+        assertEquals(frames * FORMAT.getFrameSize(), line.written);
+        assertTrue("A write was larger than a buffer", line.largest <= BUFFER_SIZE);
+        assertTrue("Streaming allocated " + line.allocated() + " bytes", line.allocated() < BUFFERS * BUFFER_SIZE);
+    }
+    
+    @Test
+    public void resetKeepsAPausedStreamPaused() throws Exception {
+        CountingLine line = new CountingLine();
+        Sound sound = new Sound(new SoundStream(clip.getName(), line));
+        line.allow(3);
+        sound.play();
+        line.await(3);
+        sound.pause(true);
+        sound.reset();
+        assertFalse(line.isRunning());
+        assertFalse(sound.isPlaying());
+        line.allow(1);
+        line.await(4);
+        for (int i = 0; i < line.start.length; i++) assertEquals(i * 31 & 0xFF, line.start[i] & 0xFF);
+        sound.pause(false);
+        assertTrue(line.isRunning());
+        line.allow(Integer.MAX_VALUE);
+        assertTrue("The clip did not finish streaming", line.drained.await(60, TimeUnit.SECONDS));
+    }
+    
+    /**
+     * A line that discards the audio, lets a limited amount of writes through and measures
+     * how much the stream threads allocate after the first buffer arrived.
+     */
+    private static final class CountingLine implements SourceDataLine {
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final CountDownLatch drained = new CountDownLatch(1);
+        private final byte[] start = new byte[8];
+        private long decoder = -1, decoderStart, decoderLast, feederStart, feederLast, written;
+        private int largest, writes, permits = Integer.MAX_VALUE;
+        private volatile boolean running, open;
+        
+        synchronized void allow(int writes) {
+            permits = writes;
+            notifyAll();
+        }
+        
+        synchronized void await(int writes) throws InterruptedException {
+            while (this.writes < writes) wait();
+        }
+        
+        long allocated() {
+            return decoderLast - decoderStart + feederLast - feederStart;
+        }
+        
+        @Override
+        public synchronized int write(byte[] bytes, int offset, int length) {
+            try {
+                while (permits == 0) wait();
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            if (permits != Integer.MAX_VALUE) permits--;
+            System.arraycopy(bytes, offset, start, 0, Math.min(length, start.length));
+            long feeder = Thread.currentThread().getId();
+            if (decoder < 0) {
+                for (Thread thread : Thread.getAllStackTraces().keySet())
+                    if (thread.getName().equals("GameTools Sound Decoder")) decoder = thread.getId();
+                decoderStart = decoderLast = threads.getThreadAllocatedBytes(decoder);
+                feederStart = threads.getThreadAllocatedBytes(feeder);
+            }
+            long decoded = threads.getThreadAllocatedBytes(decoder);
+            if (decoded > 0) decoderLast = decoded;
+            feederLast = threads.getThreadAllocatedBytes(feeder);
+            written += length;
+            largest = Math.max(largest, length);
+            writes++;
+            notifyAll();
+            return length;
+        }
+        
+        @Override
+        public void drain() {
+            drained.countDown();
+        }
+        
+        @Override
+        public void open(AudioFormat format, int bufferSize) {
+            open = true;
+        }
+        
+        @Override
+        public void open(AudioFormat format) {
+            open = true;
+        }
+        
+        @Override
+        public void open() {
+            open = true;
+        }
+        
+        @Override
+        public void close() {
+            open = false;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+        
+        @Override
+        public void start() {
+            running = true;
+        }
+        
+        @Override
+        public void stop() {
+            running = false;
+        }
+        
+        @Override
+        public boolean isRunning() {
+            return running;
+        }
+        
+        @Override
+        public boolean isActive() {
+            return running;
+        }
+        
+        @Override
+        public void flush() {}
+        
+        @Override
+        public AudioFormat getFormat() {
+            return FORMAT;
+        }
+        
+        @Override
+        public int getBufferSize() {
+            return BUFFER_SIZE * 2;
+        }
+        
+        @Override
+        public int available() {
+            return BUFFER_SIZE * 2;
+        }
+        
+        @Override
+        public int getFramePosition() {
+            return 0;
+        }
+        
+        @Override
+        public long getLongFramePosition() {
+            return 0;
+        }
+        
+        @Override
+        public long getMicrosecondPosition() {
+            return 0;
+        }
+        
+        @Override
+        public float getLevel() {
+            return AudioSystem.NOT_SPECIFIED;
+        }
+        
+        @Override
+        public Line.Info getLineInfo() {
+            return new Line.Info(SourceDataLine.class);
+        }
+        
+        @Override
+        public Control[] getControls() {
+            return new Control[0];
+        }
+        
+        @Override
+        public boolean isControlSupported(Control.Type control) {
+            return false;
+        }
+        
+        @Override
+        public Control getControl(Control.Type control) {
+            if (control == FloatControl.Type.MASTER_GAIN) return new FloatControl(FloatControl.Type.MASTER_GAIN, -80, 6, 0.1f, 0, 0, "dB") {};
+            throw new IllegalArgumentException(control.toString());
+        }
+        
+        @Override
+        public void addLineListener(LineListener listener) {}
+        
+        @Override
+        public void removeLineListener(LineListener listener) {}
+    }
+}
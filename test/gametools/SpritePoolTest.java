@@ -0,0 +1,141 @@
+package gametools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpritePoolTest {
+    private Group group;
+    private List<Sprite> created;
+    private Sprite reset;
+    private int resets;
+    
+    @Before
+    public void createGroup() {
+        Game.setPainter(new BufferedImage(64, 64, BufferedImage.TYPE_INT_ARGB).createGraphics());
+        group = new Group();
+        created = new ArrayList<>();
+        group.setPool(new Group.Factory() {
+            @Override
+            public Sprite create() {
+                Sprite sprite = new Sprite();
+                created.add(sprite);
+                return sprite;
+            }
+            
+            @Override
+            public void reset(Sprite sprite) {
+                reset = sprite;
+                resets++;
+            }
+        }, 8);
+    }
+    
+    @After
+    public void removePainter() {
+        Game.setPainter(null);
+    }
+    
+    @Test
+    public void obtainReusesReleasedSprites() {
+        Sprite first = group.obtain();
+        group.remove(first);
+        group.release(first);
+        Sprite second = group.obtain();
+        assertSame(first, second);
+        assertEquals(1, created.size());
+        assertSame(first, reset);
+        assertEquals(1, resets);
+        assertEquals(1, group.getPoolHits());
+        assertEquals(1, group.getPoolMisses());
+        assertEquals(1, group.size());
+    }
+    
+    @Test
+    public void drawAllReleasesRemovedSpritesOnce() {
+        for (int i = 0; i < 10; i++) group.obtain();
+        Set<Sprite> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 10; i += 3) {
+            group.get(i).remove(true);
+            removed.add(group.get(i));
+        }
+        group.drawAll();
+        group.drawAll();
+        assertEquals(10 - removed.size(), group.size());
+        assertEquals(removed.size(), group.getPoolSize());
+        Set<Sprite> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < removed.size(); i++) {
+            Sprite sprite = group.obtain();
+            assertFalse(sprite.markedForRemoval());
+            reused.add(sprite);
+        }
+        assertEquals(removed, reused);
+        assertEquals(0, group.getPoolSize());
+        assertEquals(10, created.size());
+        group.obtain();
+        assertEquals(11, created.size());
+    }
+    
+    @Test
+    public void releasingTwiceKeepsTheSpriteOnce() {
+        Sprite sprite = group.obtain();
+        group.remove(sprite);
+        group.release(sprite);
+        group.release(sprite);
+        assertEquals(1, group.getPoolSize());
+        assertSame(sprite, group.obtain());
+        assertNotSame(sprite, group.obtain());
+        assertEquals(2, created.size());
+    }
+    
+    @Test
+    public void poolKeepsAtMostItsCapacity() {
+        for (int i = 0; i < 20; i++) group.obtain().remove(true);
+        group.drawAll();
+        assertEquals(0, group.size());
+        assertEquals(8, group.getPoolSize());
+        group.setPoolCapacity(3);
+        assertEquals(3, group.getPoolSize());
+        for (int i = 0; i < 5; i++) group.obtain();
+        assertEquals(22, created.size());
+        assertTrue(group.getPoolHitRate() > 0);
+    }
+    
+    @Test
+    public void pooledSpawningAllocatesLessThanCreating() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        spawn(true, 1000);
+        spawn(false, 1000);
+        long pooled = spawn(true, 10000), unpooled = spawn(false, 10000);
+        assertTrue("Pooled spawning allocated " + pooled + " bytes and creating " + unpooled, unpooled > pooled * 10);
+    }
+    
+    /**
+     * Spawns and removes sprites one at a time and returns the bytes the thread allocated.
+     */
+    private long spawn(boolean pooled, int times) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId(), start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < times; i++) {
+            Sprite sprite = pooled? group.obtain() : new Sprite();
+            if (!pooled) group.add(sprite);
+            group.remove(sprite);
+            if (pooled) group.release(sprite);
+        }
+        return threads.getThreadAllocatedBytes(thread) - start;
+    }
+}
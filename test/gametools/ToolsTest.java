@@ -0,0 +1,37 @@
+package gametools;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class ToolsTest {
+    @Test
+    public void threadsStartingTogetherGetTheirOwnRandomSource() throws InterruptedException {
+        for (int run = 0; run < 20; run++) {
+            Set<RandomSource> sources = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+            CountDownLatch ready = new CountDownLatch(16), go = new CountDownLatch(1);
+            Thread[] threads = new Thread[16];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(() -> {
+                    ready.countDown();
+                    try {
+                        go.await();
+                    }
+                    catch (InterruptedException ex) {
+                        return;
+                    }
+                    sources.add(Tools.random());
+                });
+                threads[i].start();
+            }
+            ready.await();
+            go.countDown();
+            for (Thread thread : threads) thread.join();
+            assertEquals(16, sources.size());
+        }
+    }
+}